@@ -0,0 +1,92 @@
+package com.developerdan.blocklist.loader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Domain sets shaped like real lists: a few thousand registrable domains with many numbered subdomains.
+ */
+final class BenchmarkData {
+    private static final String[] TLDS = {"com", "net", "org", "info", "ru", "de", "io", "xyz", "co.uk"};
+    private static final String[] WORDS = {"ads", "track", "cdn", "metrics", "pixel", "stats", "banner", "click",
+            "media", "img", "api", "telemetry", "analytics", "adserver", "beacon", "sync"};
+
+    private BenchmarkData() {
+    }
+
+    static List<String> domains(int count, long seed) {
+        var random = new Random(seed);
+        var unique = new HashSet<String>(count * 2);
+        var domains = new ArrayList<String>(count);
+        var registrable = Math.max(100, count / 20);
+        while (domains.size() < count) {
+            var domain = domain(random, registrable);
+            if (unique.add(domain)) {
+                domains.add(domain);
+            }
+        }
+        return domains;
+    }
+
+    /**
+     * Copy of the given domains with roughly {@code churn} of them removed and as many new ones added.
+     */
+    static List<String> churn(List<String> domains, double churn, long seed) {
+        var random = new Random(seed);
+        var unique = new HashSet<>(domains);
+        var changed = new ArrayList<String>(domains.size());
+        for (var domain : domains) {
+            if (random.nextDouble() >= churn) {
+                changed.add(domain);
+            }
+        }
+        var registrable = Math.max(100, domains.size() / 20);
+        while (changed.size() < domains.size()) {
+            var domain = "new" + domain(random, registrable);
+            if (unique.add(domain)) {
+                changed.add(domain);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Domains of a real list exported one per line, or synthetic ones when no file is given.
+     */
+    static List<String> domainsOrFile(String listFile, int count, long seed) {
+        if (listFile == null || listFile.isBlank()) {
+            return domains(count, seed);
+        }
+        try (var lines = Files.lines(Paths.get(listFile))) {
+            return lines.map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(line -> line.toLowerCase(Locale.ROOT))
+                    .distinct()
+                    .limit(count)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String domain(Random random, int registrable) {
+        var base = WORDS[random.nextInt(WORDS.length)] + Integer.toString(random.nextInt(registrable), 36)
+                + "." + TLDS[random.nextInt(TLDS.length)];
+        switch (random.nextInt(4)) {
+            case 0:
+                return base;
+            case 1:
+                return WORDS[random.nextInt(WORDS.length)] + "." + base;
+            default:
+                return WORDS[random.nextInt(WORDS.length)] + random.nextInt(1000) + "." + base;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.developerdan.blocklist.loader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffing a version against its predecessor: the DomainStore merge and the shared dictionary id sets against the
+ * former TreeSet union.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class DiffBenchmark {
+    @Param({"10000", "100000", "1000000", "5000000"})
+    int size;
+
+    @Param({"0.01"})
+    double churn;
+
+    @Param({""})
+    String listFile;
+
+    private DomainStore previousStore;
+    private DomainStore currentStore;
+    private TreeSet<String> previousSet;
+    private TreeSet<String> currentSet;
+    private DomainDictionary dictionary;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var previous = BenchmarkData.domainsOrFile(listFile, size, 1);
+        var current = BenchmarkData.churn(previous, churn, 2);
+        previousStore = DomainStore.copyOf(previous.iterator());
+        currentStore = DomainStore.copyOf(current.iterator());
+        previousSet = new TreeSet<>(previous);
+        currentSet = new TreeSet<>(current);
+        // a dictionary that already knows the domains, as it would after the first lists of a run
+        dictionary = new DomainDictionary();
+        DomainIdSet.of(previousStore, dictionary);
+        DomainIdSet.of(currentStore, dictionary);
+    }
+
+    @Benchmark
+    public void domainStoreMerge(Blackhole blackhole) {
+        DomainStore.diff(previousStore, currentStore, new BlackholeSink(blackhole));
+    }
+
+    /**
+     * Includes turning both stores into id sets, which is what a load pays per list.
+     */
+    @Benchmark
+    public void domainIdSetDiff(Blackhole blackhole) {
+        DomainIdSet.diff(DomainIdSet.of(previousStore, dictionary), DomainIdSet.of(currentStore, dictionary), new BlackholeSink(blackhole));
+    }
+
+    @Benchmark
+    public void treeSetUnion(Blackhole blackhole) {
+        var allDomains = new TreeSet<>(previousSet);
+        allDomains.addAll(currentSet);
+        for (var entry : allDomains) {
+            if (!previousSet.contains(entry)) {
+                blackhole.consume(entry);
+            } else if (!currentSet.contains(entry)) {
+                blackhole.consume(entry);
+            }
+        }
+    }
+
+    @Benchmark
+    public DomainStore buildStore() {
+        return DomainStore.copyOf(currentSet.iterator());
+    }
+
+    static final class BlackholeSink implements SortedDiff.Sink<String> {
+        private final Blackhole blackhole;
+
+        BlackholeSink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void added(String entry) {
+            blackhole.consume(entry);
+        }
+
+        @Override
+        public void removed(String entry) {
+            blackhole.consume(entry);
+        }
+
+        @Override
+        public void unchanged(String entry) {
+            blackhole.consume(entry);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.Domain;
+import com.developerdan.blocklist.tools.DomainListParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a list and sorting the entries of a version in memory against sorting them through runs on disk.
+ * Run the external variants with a smaller run size than the list to measure the cost of spilling, and compare
+ * the heap each needs with {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class ExternalSortBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"50000"})
+    int runEntries;
+
+    @Param({""})
+    String listFile;
+
+    private List<String> lines;
+    private Path spillDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lines = BenchmarkData.domainsOrFile(listFile, size, 5);
+        spillDirectory = Files.createTempDirectory("external-sort-benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(spillDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public DomainStore parseInMemory() {
+        var parsedList = new DomainListParser().parseStream(lines.stream());
+        return DomainStore.copyOf(parsedList.getRecords(), Domain::toString);
+    }
+
+    @Benchmark
+    public DomainStore parseExternal() {
+        var parser = new StreamingListParser(DomainListParser::new, new Semaphore(1), spillDirectory, runEntries);
+        return parser.parse(lines.stream()).getEntries();
+    }
+
+    @Benchmark
+    public DomainStore entriesInMemory() {
+        return BlocklistClient.parseEntries(lines.stream());
+    }
+
+    @Benchmark
+    public DomainStore entriesExternal() {
+        return SpillingSorter.sort(lines.iterator(), spillDirectory, runEntries);
+    }
+}
@@ -0,0 +1,52 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.DomainListParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the plain text entries of a version, as returned by getFullList, into a set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class FullListParseBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({""})
+    String listFile;
+
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lines = BenchmarkData.domainsOrFile(listFile, size, 3);
+    }
+
+    @Benchmark
+    public DomainStore entryLinesToDomainStore() {
+        return BlocklistClient.parseEntries(lines.stream());
+    }
+
+    @Benchmark
+    public Object entryLinesToParsedList() {
+        return new DomainListParser().parseStream(lines.stream());
+    }
+}
@@ -0,0 +1,110 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request throughput of the API and upstream clients against the in-process stub, by HTTP version and
+ * concurrency limit. The stub only speaks HTTP/1.1, so HTTP_2 measures the cost of the refused upgrade;
+ * point {@code baseUrl} at a real deployment to measure multiplexing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Dlogback.configurationFile=logback-benchmark.xml"})
+public class HttpClientBenchmark {
+    private static final int ENTRY_REQUESTS = 1000;
+    private static final int DOWNLOADS = 32;
+
+    @Param({"HTTP_1_1", "HTTP_2"})
+    HttpClient.Version version;
+
+    @Param({"0", "8", "64"})
+    int maxConcurrentRequests;
+
+    @Param({""})
+    String baseUrl;
+
+    private StubApi stub;
+    private BlocklistClient client;
+    private ListDownloader downloader;
+    private Version version1;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var entries = BenchmarkData.domains(100_000, 6);
+        stub = new StubApi(UUID.randomUUID(), entries, entries);
+        var url = baseUrl.isBlank() ? stub.baseUrl() : baseUrl;
+        var settings = new HttpClientSettings("benchmark", version, Duration.ofSeconds(10), Duration.ofSeconds(60),
+                Duration.ofMinutes(8), maxConcurrentRequests);
+        client = new BlocklistClient(new StubApi.StubConfiguration(url) {
+            @Override
+            public HttpClientSettings apiHttpClient() {
+                return settings;
+            }
+        });
+        downloader = new ListDownloader(settings);
+        version1 = new Version(UUID.randomUUID(), "raw", "parsed", 1, Instant.now(), false);
+        version1.setId(UUID.randomUUID());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTRY_REQUESTS)
+    public void entryPeriodRequests() {
+        var requests = new CompletableFuture<?>[ENTRY_REQUESTS];
+        for (var i = 0; i < ENTRY_REQUESTS; i++) {
+            requests[i] = client.startEntryPeriod(version1, "host" + i + ".example.com");
+        }
+        CompletableFuture.allOf(requests).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOWNLOADS)
+    public long listDownloads() {
+        var executor = LoaderExecutors.perTask("benchmark-download");
+        try {
+            var downloads = new CompletableFuture<?>[DOWNLOADS];
+            for (var i = 0; i < DOWNLOADS; i++) {
+                downloads[i] = CompletableFuture.supplyAsync(() -> {
+                    try (var download = downloader.download(stub.upstreamUrl(), FetchState.EMPTY)) {
+                        return download.getSize();
+                    }
+                }, executor);
+            }
+            CompletableFuture.allOf(downloads).join();
+            return downloads.length;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        downloader.close();
+        stub.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Blocklist;
+import com.developerdan.blocklist.loader.entity.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * (De)serialization of the API's Version and Blocklist arrays through JsonBodyHandler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new ParameterNamesModule())
+            .registerModule(new Jdk8Module())
+            .registerModule(new JavaTimeModule());
+
+    @Param({"10", "1000", "20000"})
+    int elements;
+
+    private byte[] versionsJson;
+    private byte[] blocklistsJson;
+    private Version version;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var versions = new Version[elements];
+        var blocklists = new Blocklist[elements];
+        var blocklistId = UUID.randomUUID();
+        for (var i = 0; i < elements; i++) {
+            versions[i] = new Version(blocklistId, "raw" + i, "parsed" + i, 100_000 + i, Instant.ofEpochSecond(1_600_000_000L + i), true);
+            versions[i].setId(UUID.randomUUID());
+            blocklists[i] = new Blocklist();
+            blocklists[i].setId(UUID.randomUUID());
+            blocklists[i].setName("List " + i);
+            blocklists[i].setFormat(i % 2 == 0 ? "hosts" : "domain");
+            blocklists[i].setDownloadUrl("https://example.com/lists/" + i + ".txt");
+        }
+        versionsJson = MAPPER.writeValueAsBytes(versions);
+        blocklistsJson = MAPPER.writeValueAsBytes(blocklists);
+        version = versions[0];
+    }
+
+    @Benchmark
+    public long readVersions() {
+        try (var stream = JsonBodyHandler.arrayElements(new ByteArrayInputStream(versionsJson), Version.class)) {
+            return stream.count();
+        }
+    }
+
+    @Benchmark
+    public long readBlocklists() {
+        try (var stream = JsonBodyHandler.arrayElements(new ByteArrayInputStream(blocklistsJson), Blocklist.class)) {
+            return stream.count();
+        }
+    }
+
+    @Benchmark
+    public Object writeVersion() {
+        return JsonBodyHandler.requestFromVersion(version);
+    }
+}
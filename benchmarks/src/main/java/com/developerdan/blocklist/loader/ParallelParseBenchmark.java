@@ -0,0 +1,78 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.Domain;
+import com.developerdan.blocklist.tools.HostsParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Parsing a downloaded hosts file on one thread, as the loader does by default, against parsing it in chunks on
+ * a fork-join pool of {@code threads}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class ParallelParseBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"1", "4", "8"})
+    int threads;
+
+    @Param({""})
+    String listFile;
+
+    private Path file;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("parallel-parse-benchmark", ".txt");
+        var hosts = BenchmarkData.domainsOrFile(listFile, size, 11).stream()
+                .map(domain -> "0.0.0.0 " + domain)
+                .collect(Collectors.joining("\n", "", "\n"));
+        Files.writeString(file, hosts, StandardCharsets.UTF_8);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public DomainStore parseSerial() throws IOException {
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            var parsedList = new HostsParser().parseStream(lines);
+            return DomainStore.copyOf(parsedList.getRecords(), Domain::toString);
+        }
+    }
+
+    @Benchmark
+    public DomainStore parseParallel() {
+        return new ParallelListParser(HostsParser::new, pool).parse(file).getEntries();
+    }
+}
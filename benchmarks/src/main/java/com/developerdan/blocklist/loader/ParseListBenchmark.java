@@ -0,0 +1,84 @@
+package com.developerdan.blocklist.loader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete parseList run against an in-process stub of the API and the upstream host: previous version
+ * lookup, download, parse, previous entries download, diff, entry period upload and version update. With
+ * {@code queue} the entry periods go through the entry period queue in a temporary cache directory, which also
+ * keeps snapshots there; from the second run on, the previous entries are then rebuilt from the snapshot of the
+ * version created before and the stub's entry changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dlogback.configurationFile=logback-benchmark.xml"})
+public class ParseListBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"0.01"})
+    double churn;
+
+    @Param({"true", "false"})
+    boolean bulk;
+
+    @Param({"false", "true"})
+    boolean queue;
+
+    private StubApi stub;
+    private UUID blocklistId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var previous = BenchmarkData.domains(size, 4);
+        var current = BenchmarkData.churn(previous, churn, 5);
+        blocklistId = UUID.randomUUID();
+        stub = new StubApi(blocklistId, previous, current);
+        var cacheDirectory = queue ? Optional.of(Files.createTempDirectory("list-loader-benchmark")) : Optional.<Path>empty();
+        var configuration = new StubApi.StubConfiguration(stub.baseUrl()) {
+            @Override
+            public boolean bulkEntryPeriods() {
+                return bulk;
+            }
+
+            @Override
+            public Optional<Path> cacheDirectory() {
+                return cacheDirectory;
+            }
+        };
+        App.initialize(configuration);
+    }
+
+    @Benchmark
+    public boolean parseList() {
+        return App.parseList("benchmark", App.getParser("domain"), stub.upstreamUrl(), blocklistId, Instant.now(), false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+}
@@ -0,0 +1,174 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import com.developerdan.blocklist.tools.DomainListParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the Blocklist API and an upstream list host. The blocklist always has one fully
+ * loaded version holding {@code previousEntries}; the upstream list serves {@code currentEntries}. Versions created
+ * through the stub hold {@code currentEntries}, so the changes of the previous version since any of them can be
+ * asked for. The requests it received are logged per route when it is closed.
+ */
+final class StubApi implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubApi.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new ParameterNamesModule())
+            .registerModule(new Jdk8Module())
+            .registerModule(new JavaTimeModule());
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Version previousVersion;
+    private final byte[] previousEntries;
+    private final byte[] currentEntries;
+    private final byte[] changesSinceCurrent;
+    private final Set<UUID> createdVersions = ConcurrentHashMap.newKeySet();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    StubApi(UUID blocklistId, List<String> previousEntries, List<String> currentEntries) throws IOException {
+        var parsedSha = new DomainListParser().parseStream(previousEntries.stream()).getParsedSha();
+        this.previousVersion = new Version(blocklistId, "previous-raw", parsedSha, previousEntries.size(), Instant.ofEpochSecond(1_600_000_000L), true);
+        this.previousVersion.setId(UUID.randomUUID());
+        this.previousEntries = String.join("\n", previousEntries).getBytes(StandardCharsets.UTF_8);
+        this.currentEntries = String.join("\n", currentEntries).getBytes(StandardCharsets.UTF_8);
+        this.changesSinceCurrent = changes(currentEntries, previousEntries);
+        this.executor = Executors.newFixedThreadPool(16);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String upstreamUrl() {
+        return baseUrl() + "/upstream/list.txt";
+    }
+
+    /**
+     * Requests received so far, per route.
+     */
+    Map<String, Long> requestCounts() {
+        var counts = new TreeMap<String, Long>();
+        requests.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath();
+            var body = exchange.getRequestBody().readAllBytes();
+            if (path.equals("/upstream/list.txt")) {
+                respond(exchange, "upstream", 200, currentEntries);
+            } else if (method.equals("GET") && path.matches("/blocklists/[^/]+/versions")) {
+                respond(exchange, "getVersions", 200, MAPPER.writeValueAsBytes(new Version[]{previousVersion}));
+            } else if (method.equals("GET") && path.matches("/versions/[^/]+/entries/changes")) {
+                var since = exchange.getRequestURI().getQuery().replaceFirst("^since=", "");
+                if (createdVersions.contains(UUID.fromString(since))) {
+                    respond(exchange, "getEntryChanges", 200, changesSinceCurrent);
+                } else {
+                    respond(exchange, "getEntryChanges", 410, new byte[0]);
+                }
+            } else if (method.equals("GET") && path.matches("/versions/[^/]+/entries")) {
+                respond(exchange, "getFullList", 200, previousEntries);
+            } else if (method.equals("POST") && path.equals("/versions")) {
+                var version = MAPPER.readValue(body, Version.class);
+                version.setId(UUID.randomUUID());
+                createdVersions.add(version.getId());
+                respond(exchange, "createVersion", 201, MAPPER.writeValueAsBytes(version));
+            } else if (method.equals("PUT") && path.equals("/versions")) {
+                respond(exchange, "updateVersion", 200, body);
+            } else if (method.equals("DELETE") && path.startsWith("/versions/")) {
+                respond(exchange, "deleteVersion", 200, new byte[0]);
+            } else if (path.matches("/blocklists/[^/]+/versions/[^/]+/entries(/bulk)?")) {
+                respond(exchange, (path.endsWith("/bulk") ? "bulk" : "single") + method + "EntryPeriod", 201, new byte[0]);
+            } else {
+                respond(exchange, "unknown", 404, new byte[0]);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Stub request failed", e));
+        }
+    }
+
+    /**
+     * Entry changes from one list to another, one {@code +domain} or {@code -domain} per line.
+     */
+    private static byte[] changes(List<String> from, List<String> to) {
+        var fromSet = new HashSet<>(from);
+        var toSet = new HashSet<>(to);
+        var body = new StringBuilder();
+        to.stream().filter(domain -> !fromSet.contains(domain)).forEach(domain -> body.append('+').append(domain).append('\n'));
+        from.stream().filter(domain -> !toSet.contains(domain)).forEach(domain -> body.append('-').append(domain).append('\n'));
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void respond(HttpExchange exchange, String route, int status, byte[] body) throws IOException {
+        requests.computeIfAbsent(route, ignored -> new LongAdder()).increment();
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        LOGGER.info("Stub API requests: {}", requestCounts());
+    }
+
+    /**
+     * Loader configuration pointing at a stub, with every local cache disabled.
+     */
+    static class StubConfiguration extends Configuration {
+        private final String baseUrl;
+
+        StubConfiguration(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        @Override
+        public String blocklistApiBaseUrl() {
+            return baseUrl;
+        }
+
+        @Override
+        public String blocklistApiAuthToken() {
+            return "benchmark";
+        }
+
+        @Override
+        public Optional<Path> cacheDirectory() {
+            return Optional.empty();
+        }
+    }
+}
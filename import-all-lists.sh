@@ -1,9 +1,16 @@
 #!/bin/sh
 set -e
 
+# Optional shard, index/count: only the history files of that shard's blocklists are imported,
+# so several nodes can each run this script with their own shard.
+shard_args=""
+if [ -n "$1" ]; then
+  shard_args="--shard $1"
+fi
+
 for file_with_path in $(ls -t ./history-files/*-results.json); do
   uuid=$(jq -r ".name" < "${file_with_path}")
   file_name=$(basename "${file_with_path}")
-  echo "Running: docker-compose run --rm list-loader --blocklist ${uuid} --import \"/opt/history-files/${file_name}\" > \"./log/${file_name}.log\""
-  docker-compose run --rm list-loader --blocklist ${uuid} --import "/opt/history-files/${file_name}" > "./log/${file_name}.log"
+  echo "Running: docker-compose run --rm list-loader --blocklist ${uuid} ${shard_args} --import \"/opt/history-files/${file_name}\" > \"./log/${file_name}.log\""
+  docker-compose run --rm list-loader --blocklist ${uuid} ${shard_args} --import "/opt/history-files/${file_name}" > "./log/${file_name}.log"
 done
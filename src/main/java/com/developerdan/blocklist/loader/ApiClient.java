@@ -1,26 +1,108 @@
 package com.developerdan.blocklist.loader;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.time.Duration;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
-public class ApiClient {
-    protected static HttpClient buildHttpClient() {
+/**
+ * HTTP client with its own executor, which {@link #close()} shuts down together with the client.
+ */
+public class ApiClient implements AutoCloseable {
+    private final HttpClientSettings settings;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final ConcurrencyLimit requestLimit;
+
+    protected ApiClient(HttpClientSettings settings) {
+        this.settings = settings;
+        this.executor = LoaderExecutors.perTask(settings.getName() + "-http");
+        this.httpClient = buildHttpClient(settings, executor);
+        this.requestLimit = new ConcurrencyLimit(settings.getMaxConcurrentRequests());
+    }
+
+    protected static HttpClient buildHttpClient(HttpClientSettings settings, ExecutorService executor) {
         return HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
+                .version(settings.getVersion())
                 .followRedirects(HttpClient.Redirect.NORMAL)
-                .connectTimeout(Duration.ofSeconds(120))
+                .connectTimeout(settings.getConnectTimeout())
+                .executor(executor)
                 .build();
     }
 
     protected HttpRequest.Builder buildHttpRequest(String url) {
         return HttpRequest
                 .newBuilder()
-                .timeout(Duration.ofSeconds(120))
+                .timeout(settings.getRequestTimeout())
                 .header("User-Agent", "Blocklist Tools: List Loader")
                 .header("Accept", "application/json")
                 .header("Content-Type", "application/json")
                 .uri(URI.create(url));
     }
+
+    protected HttpClientSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sends a request within the client's concurrency limit. The permit is held until the response headers
+     * arrive; use {@link #withPermit} to hold it while a large body is read.
+     */
+    protected <T> HttpResponse<T> exchange(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        return withPermit(() -> httpClient.send(request, bodyHandler));
+    }
+
+    protected <T> CompletableFuture<HttpResponse<T>> exchangeAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return requestLimit.run(() -> httpClient.sendAsync(request, bodyHandler));
+    }
+
+    /**
+     * Runs requests sent with {@link #send} while holding one of the client's permits.
+     */
+    protected <T> T withPermit(Exchange<T> exchange) throws IOException, InterruptedException {
+        requestLimit.acquireBlocking();
+        try {
+            return exchange.run();
+        } finally {
+            requestLimit.release();
+        }
+    }
+
+    /**
+     * Sends a request without taking a permit, for use inside {@link #withPermit}.
+     */
+    protected <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        return httpClient.send(request, bodyHandler);
+    }
+
+    /**
+     * Requests waiting for a permit.
+     */
+    public int getRequestsWaiting() {
+        return requestLimit.getWaiting();
+    }
+
+    /**
+     * Shuts the executor down once its tasks are done. On Java 21+, where the HTTP client is closeable, the client
+     * is closed first, which waits for the requests it is still sending.
+     */
+    @Override
+    public void close() {
+        if (httpClient instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to close the " + settings.getName() + " HTTP client", e);
+            }
+        }
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    protected interface Exchange<T> {
+        T run() throws IOException, InterruptedException;
+    }
 }
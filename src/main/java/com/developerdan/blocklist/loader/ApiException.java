@@ -1,18 +1,35 @@
 package com.developerdan.blocklist.loader;
 
 public class ApiException extends RuntimeException {
+    private final int statusCode;
+
     public ApiException(Throwable ex)
     {
         super(ex);
+        this.statusCode = 0;
     }
 
     public ApiException(String message, Throwable ex)
     {
         super(message, ex);
+        this.statusCode = 0;
     }
 
     public ApiException(String message)
+    {
+        this(message, 0);
+    }
+
+    public ApiException(String message, int statusCode)
     {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * HTTP status of the response that caused the exception, or 0 if there was no response.
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
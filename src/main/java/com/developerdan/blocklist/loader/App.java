@@ -1,5 +1,6 @@
 package com.developerdan.blocklist.loader;
 
+import com.developerdan.blocklist.loader.entity.Blocklist;
 import com.developerdan.blocklist.loader.entity.Version;
 import com.developerdan.blocklist.tools.BlocklistParser;
 import com.developerdan.blocklist.tools.Domain;
@@ -8,60 +9,481 @@ import com.developerdan.blocklist.tools.HostsParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.NavigableSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class App {
     private static final Logger LOGGER = LoggerFactory.getLogger(App.class);
+    private static Configuration configuration;
     private static BlocklistClient client;
+    private static RequestWindow requestWindow;
+    private static SnapshotCache snapshotCache;
+    private static FetchStateStore fetchStates;
+    private static UploadJournal uploadJournal;
+    private static EntryPeriodQueue entryPeriodQueue;
+    private static ListDownloader downloader;
+    private static final AtomicReference<DomainDictionary> domainDictionary = new AtomicReference<>();
+    private static Semaphore parsePermits;
+    private static ForkJoinPool parsePool;
+    private static RetryPolicy listRetryPolicy;
+    private static LoaderMetrics metrics;
+    private static MetricsServer metricsServer;
     private static boolean IMPORT_NEW_LIST_ARG = false;
     private static UUID BLOCKLIST_ID_ARG = null;
     private static Path HISTORY_FILE_PATH_ARG = null;
+    private static Shard SHARD_ARG = null;
+    private static boolean DAEMON_ARG = false;
 
     public static void main(final String[] args) {
         parseArgs(args);
-        client = new BlocklistClient(new Configuration());
-        if (IMPORT_NEW_LIST_ARG) {
-            importNewList(BLOCKLIST_ID_ARG, HISTORY_FILE_PATH_ARG);
-        } else {
-            loadAllLists();
+        initialize(new Configuration());
+        try {
+            if (IMPORT_NEW_LIST_ARG) {
+                importNewList(BLOCKLIST_ID_ARG, HISTORY_FILE_PATH_ARG);
+            } else if (DAEMON_ARG || configuration.daemon()) {
+                runDaemon();
+            } else {
+                loadAllLists();
+            }
+        } finally {
+            configuration.metricsFile().ifPresent(metrics::writeSummary);
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            closeClients();
+        }
+    }
+
+    static void initialize(Configuration loaderConfiguration) {
+        closeClients();
+        configuration = loaderConfiguration;
+        LoaderExecutors.setPreferVirtualThreads(configuration.virtualThreads());
+        LOGGER.debug("Running tasks on {} threads", LoaderExecutors.usesVirtualThreads() ? "virtual" : "platform");
+        metrics = new LoaderMetrics();
+        requestWindow = new RequestWindow(configuration.requestWindowInitial(), configuration.requestWindowMin(),
+                configuration.requestWindowMax(), configuration.requestWindowLatencyTarget());
+        client = new BlocklistClient(configuration, metrics, requestWindow);
+        LOGGER.debug("HTTP clients: {}; {}", configuration.apiHttpClient(), configuration.upstreamHttpClient());
+        snapshotCache = configuration.cacheDirectory()
+                .map(directory -> new SnapshotCache(directory.resolve("snapshots")))
+                .orElseGet(SnapshotCache::disabled);
+        fetchStates = configuration.cacheDirectory()
+                .map(directory -> new FetchStateStore(directory.resolve("fetch-state")))
+                .orElseGet(FetchStateStore::disabled);
+        entryPeriodQueue = configuration.cacheDirectory()
+                .filter(directory -> configuration.entryPeriodQueue())
+                .map(directory -> new EntryPeriodQueue(directory.resolve("queue"), configuration.entryPeriodQueueMaxPendingBytes()))
+                .orElseGet(EntryPeriodQueue::disabled);
+        // the queue checkpoints what the API acknowledged itself
+        uploadJournal = configuration.cacheDirectory()
+                .filter(directory -> !entryPeriodQueue.isEnabled())
+                .map(directory -> new UploadJournal(directory.resolve("journal")))
+                .orElseGet(UploadJournal::disabled);
+        downloader = new ListDownloader(configuration.upstreamHttpClient());
+        parsePermits = new Semaphore(configuration.parseConcurrency());
+        parsePool = configuration.parallelParseBytes() > 0 ? new ForkJoinPool(configuration.parseThreads()) : null;
+        domainDictionary.set(configuration.domainDictionary() ? new DomainDictionary() : null);
+        if (configuration.domainDictionary()) {
+            metrics.gauge("dictionaryDomains", () -> domainDictionary.get().size());
+            metrics.gauge("dictionaryBytes", () -> domainDictionary.get().sizeInBytes());
+        }
+        listRetryPolicy = new RetryPolicy(configuration.listAttempts(), configuration.listRetryBaseDelay(),
+                configuration.listRetryBaseDelay().multipliedBy(8), () -> metrics.increment("listRetries"));
+        metrics.gauge("apiRequests", client::getRequestCount);
+        metrics.gauge("apiRequestsWaiting", client::getRequestsWaiting);
+        metrics.gauge("downloadsWaiting", downloader::getRequestsWaiting);
+        metrics.gauge("requestWindowLimit", requestWindow::getLimit);
+        metrics.gauge("requestWindowInFlight", requestWindow::getInFlight);
+        metrics.gauge("requestWindowWaiting", requestWindow::getWaiting);
+        metrics.gauge("requestWindowCompleted", requestWindow::getCompleted);
+        metrics.gauge("requestWindowFailed", requestWindow::getFailed);
+        metrics.gauge("parsesWaiting", parsePermits::getQueueLength);
+        if (configuration.metricsPort() > 0) {
+            metricsServer = new MetricsServer(configuration.metricsPort(), metrics);
+        }
+    }
+
+    private static void closeClients() {
+        if (client != null) {
+            client.close();
+        }
+        if (downloader != null) {
+            downloader.close();
         }
     }
 
     private static void loadAllLists() {
         var lists = client.getLists();
         Collections.shuffle(lists);
-        lists.forEach(list -> {
-            var blocklistParser = getParser(list.getFormat());
-            parseList(list.getName(), blocklistParser, list.getDownloadUrl(), list.getId(), Instant.now(), 0);
-        });
+        var scheduler = newScheduler();
+        var shard = shard();
+        var results = shard.isPresent() ? loadShard(lists, shard.get(), scheduler) : scheduler.run(lists, App::loadList);
+        logResults(results);
+        LOGGER.info("Sent {} requests to the API", client.getRequestCount());
+    }
+
+    private static ListScheduler newScheduler() {
+        var scheduler = new ListScheduler(configuration.listConcurrency(), configuration.hostConcurrency(), listRetryPolicy);
+        metrics.gauge("listsRunning", scheduler::getRunning);
+        metrics.gauge("listsQueued", scheduler::getQueued);
+        metrics.gauge("listsWaitingToRetry", scheduler::getWaitingToRetry);
+        return scheduler;
+    }
+
+    private static boolean loadList(Blocklist list) {
+        return refreshList(list) != RefreshSchedule.Outcome.FAILED;
+    }
+
+    private static RefreshSchedule.Outcome refreshList(Blocklist list) {
+        var blocklistParser = getParser(list.getFormat());
+        return refreshList(list.getName(), blocklistParser, list.getDownloadUrl(), list.getId(), Instant.now(), true);
+    }
+
+    /**
+     * Keeps running with warm clients and caches, refreshing each list when its {@link RefreshSchedule} says it is
+     * due. Lists that come due together are loaded as one batch by the list scheduler; the catalog is fetched again
+     * every catalog refresh interval. With a shard, the daemon only refreshes the lists the shard owns.
+     * <p>
+     * On shutdown, the running batch of refreshes is finished, for at most the shutdown timeout, before the JVM exits.
+     */
+    private static void runDaemon() {
+        var stop = new CountDownLatch(1);
+        var daemon = Thread.currentThread();
+        var shutdownHook = new Thread(() -> {
+            LOGGER.info("Shutting down, waiting up to {} for running refreshes", configuration.shutdownTimeout());
+            stop.countDown();
+            try {
+                daemon.join(configuration.shutdownTimeout().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "loader-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        runDaemon(stop);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // already shutting down, the hook is waiting for this thread
+        }
+    }
+
+    /**
+     * Runs the daemon until {@code stop} is counted down. A batch of refreshes that already started is finished first.
+     */
+    static void runDaemon(CountDownLatch stop) {
+        var schedule = new RefreshSchedule(configuration.refreshMinInterval(), configuration.refreshMaxInterval());
+        var scheduler = newScheduler();
+        var shard = shard();
+        metrics.gauge("listsScheduled", schedule::size);
+        Map<UUID, Blocklist> lists = Map.of();
+        var catalogDue = Instant.MIN;
+        LOGGER.info("Running as a daemon, refreshing lists every {} to {}", configuration.refreshMinInterval(), configuration.refreshMaxInterval());
+        while (stop.getCount() > 0 && !Thread.currentThread().isInterrupted()) {
+            var now = Instant.now();
+            if (!catalogDue.isAfter(now)) {
+                // a failed catalog or history request is tried again at the next catalog refresh
+                catalogDue = now.plus(configuration.catalogRefreshInterval());
+                try {
+                    lists = loadCatalog(shard);
+                    schedule.retain(lists.keySet());
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to load the list catalog, trying again at {}", catalogDue, e);
+                    metrics.increment("catalogFailures");
+                }
+                for (var list : lists.values()) {
+                    if (!schedule.contains(list.getId())) {
+                        scheduleList(list, schedule, now);
+                    }
+                }
+            }
+            var due = schedule.due(now).stream().map(lists::get).toList();
+            if (!due.isEmpty()) {
+                var outcomes = new ConcurrentHashMap<UUID, RefreshSchedule.Outcome>();
+                var results = scheduler.run(due, list -> {
+                    var outcome = refreshList(list);
+                    outcomes.put(list.getId(), outcome);
+                    return outcome != RefreshSchedule.Outcome.FAILED;
+                });
+                logResults(results);
+                for (var result : results) {
+                    var list = result.getBlocklist();
+                    var outcome = outcomes.getOrDefault(list.getId(), RefreshSchedule.Outcome.FAILED);
+                    if (outcome == RefreshSchedule.Outcome.CHANGED) {
+                        metrics.increment("listsChanged");
+                    } else if (outcome == RefreshSchedule.Outcome.UNCHANGED) {
+                        metrics.increment("listsUnchanged");
+                    }
+                    schedule.record(list.getId(), outcome, Instant.now());
+                    recordInterval(list, schedule);
+                }
+                continue;
+            }
+            var wakeUp = catalogDue;
+            var nextDue = schedule.nextDue();
+            if (nextDue.isPresent() && nextDue.get().isBefore(wakeUp)) {
+                wakeUp = nextDue.get();
+            }
+            LOGGER.debug("Next refresh at {}", wakeUp);
+            await(stop, Duration.between(Instant.now(), wakeUp));
+        }
+        LOGGER.info("Daemon stopped");
+    }
+
+    private static Map<UUID, Blocklist> loadCatalog(Optional<Shard> shard) {
+        var lists = new LinkedHashMap<UUID, Blocklist>();
+        for (var list : client.getLists()) {
+            if (shard.isEmpty() || shard.get().owns(list.getId())) {
+                lists.put(list.getId(), list);
+            }
+        }
+        LOGGER.info("Scheduling {} lists", lists.size());
+        return lists;
+    }
+
+    private static void scheduleList(Blocklist list, RefreshSchedule schedule, Instant now) {
+        List<Version> history;
+        try {
+            history = recentVersions(list.getId());
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to load the versions of list {}, scheduling it at the next catalog refresh", list.getName(), e);
+            metrics.increment("catalogFailures");
+            return;
+        }
+        schedule.add(list.getId(), history, now);
+        recordInterval(list, schedule);
+    }
+
+    /**
+     * The newest fully loaded versions of the list, newest first.
+     */
+    private static List<Version> recentVersions(UUID blocklistId) {
+        try (var versions = client.getVersions(blocklistId)) {
+            return versions.filter(Version::isFullyLoaded).limit(RefreshSchedule.historyVersions()).toList();
+        }
+    }
+
+    private static void recordInterval(Blocklist list, RefreshSchedule schedule) {
+        schedule.interval(list.getId()).ifPresent(interval ->
+                metrics.list(list.getId(), list.getName()).set("refreshIntervalSeconds", interval.toSeconds()));
+    }
+
+    private static Optional<Shard> shard() {
+        return SHARD_ARG != null ? Optional.of(SHARD_ARG) : configuration.shard();
+    }
+
+    /**
+     * Loads the lists of this node's shard. With a lease directory every list is loaded under a lease; once its own
+     * lists are done, the node stays until the other shards finished theirs and takes over the lists of any shard
+     * whose node stopped or never started. It also stays until every list whose lease another node held is loaded,
+     * and loads those itself once their lease is released or expires.
+     */
+    static List<ListResult> loadShard(List<Blocklist> lists, Shard shard, ListScheduler scheduler) {
+        var own = lists.stream().filter(list -> shard.owns(list.getId())).toList();
+        LOGGER.info("Shard {}: loading {} of {} lists", shard, own.size(), lists.size());
+        var leaseDirectory = configuration.leaseDirectory();
+        if (leaseDirectory.isEmpty()) {
+            return scheduler.run(own, App::loadList);
+        }
+        try (var leases = new ListLeases(leaseDirectory.get(), shard, configuration.leaseTtl(), configuration.shardGrace())) {
+            // the last result of each list; a list leased elsewhere and loaded here later replaces its first one
+            var results = new LinkedHashMap<UUID, ListResult>();
+            var leasedElsewhere = ConcurrentHashMap.<Blocklist>newKeySet();
+            addResults(results, scheduler.run(own, list -> loadLeased(list, leases, leasedElsewhere)));
+            leases.finish();
+            var waitingFor = new TreeSet<Integer>();
+            for (var index = 0; index < shard.getCount(); index++) {
+                if (index != shard.getIndex()) {
+                    waitingFor.add(index);
+                }
+            }
+            while (!waitingFor.isEmpty() || !leasedElsewhere.isEmpty()) {
+                for (var iterator = waitingFor.iterator(); iterator.hasNext(); ) {
+                    var other = iterator.next();
+                    var state = leases.shardState(other);
+                    if (state == ListLeases.ShardState.ABANDONED) {
+                        var orphaned = lists.stream()
+                                .filter(list -> shard.owner(list.getId()) == other && !leases.isLoaded(list.getId()))
+                                .toList();
+                        LOGGER.warn("Shard {}/{} was abandoned, taking over {} of its lists", other, shard.getCount(), orphaned.size());
+                        metrics.increment("listsTakenOver", orphaned.size());
+                        addResults(results, scheduler.run(orphaned, list -> loadLeased(list, leases, leasedElsewhere)));
+                    }
+                    if (state == ListLeases.ShardState.ABANDONED || state == ListLeases.ShardState.FINISHED) {
+                        iterator.remove();
+                    }
+                }
+                leasedElsewhere.removeIf(list -> leases.isLoaded(list.getId()));
+                var released = leasedElsewhere.stream().filter(list -> !leases.isLeased(list.getId())).toList();
+                if (!released.isEmpty()) {
+                    LOGGER.warn("{} lists leased by other nodes were released or expired without being loaded, loading them", released.size());
+                    released.forEach(leasedElsewhere::remove);
+                    addResults(results, scheduler.run(released, list -> loadLeased(list, leases, leasedElsewhere)));
+                }
+                if (!waitingFor.isEmpty() || !leasedElsewhere.isEmpty()) {
+                    LOGGER.debug("Waiting for shards {} to finish and {} lists leased elsewhere to load", waitingFor, leasedElsewhere.size());
+                    sleep(leases.getHeartbeatInterval());
+                }
+            }
+            return new ArrayList<>(results.values());
+        }
+    }
+
+    private static void addResults(Map<UUID, ListResult> results, List<ListResult> added) {
+        added.forEach(result -> results.put(result.getBlocklist().getId(), result));
+    }
+
+    /**
+     * Loads the list unless this run already loaded it. A list whose lease another node holds is added to
+     * {@code leasedElsewhere} to be checked again, and counts as success until then.
+     */
+    private static boolean loadLeased(Blocklist list, ListLeases leases, Set<Blocklist> leasedElsewhere) {
+        if (leases.isLoaded(list.getId())) {
+            LOGGER.info("List {} was already loaded in this run", list.getName());
+            return true;
+        }
+        var lease = leases.tryAcquire(list.getId());
+        if (lease.isEmpty()) {
+            LOGGER.info("List {} is being loaded by another node", list.getName());
+            metrics.increment("listsLeasedElsewhere");
+            leasedElsewhere.add(list);
+            return true;
+        }
+        try (var held = lease.get()) {
+            // another node may have loaded it before the lease was free
+            if (leases.isLoaded(list.getId())) {
+                return true;
+            }
+            var loaded = loadList(list);
+            if (loaded) {
+                held.loaded();
+            }
+            return loaded;
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(Math.max(1, duration.toMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting", e);
+        }
+    }
+
+    private static void await(CountDownLatch stop, Duration duration) {
+        try {
+            stop.await(Math.max(1, duration.toMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting", e);
+        }
+    }
+
+    private static void logResults(List<ListResult> results) {
+        var failed = 0;
+        for (var result : results) {
+            metrics.list(result.getBlocklist().getId(), result.getBlocklist().getName()).finished(result.isSuccessful());
+            if (result.isSuccessful()) {
+                LOGGER.info("List {} loaded in {} seconds", result.getBlocklist().getName(), result.getDuration().toMillis() / 1000.0);
+            } else {
+                failed++;
+                LOGGER.error("List {} failed after {} seconds: {}", result.getBlocklist().getName(), result.getDuration().toMillis() / 1000.0, result.getError());
+            }
+        }
+        LOGGER.info("Loaded {} lists, {} failed", results.size() - failed, failed);
     }
 
     private static void importNewList(UUID blocklistId, Path historyFilePath) {
+        var shard = shard();
+        if (shard.isPresent() && !shard.get().owns(blocklistId)) {
+            LOGGER.info("Blocklist {} belongs to shard {}/{}, not {}; skipping its import", blocklistId,
+                    shard.get().owner(blocklistId), shard.get().getCount(), shard.get());
+            return;
+        }
         var list = client.getList(blocklistId);
         var versions = JsonBodyHandler.historicalLists(historyFilePath);
         var versionCount = versions.size();
-        AtomicInteger versionIndex = new AtomicInteger(1);
-        versions.stream().sorted().forEachOrdered(history -> {
-            LOGGER.info("History import: {} of {}", versionIndex.getAndIncrement(), versionCount);
-            var blocklistParser = getParser(list.getFormat());
-            var successful = parseList(list.getName(), blocklistParser, history.getUrl(), list.getId(), Instant.ofEpochSecond(history.getCommitEpoch()), 0);
-            if (!successful) {
-                throw new RuntimeException("Unable to load list " + list.getName() + ": " + history.getUrl());
+        var blocklistParser = getParser(list.getFormat());
+        var listMetrics = metrics.list(list.getId(), list.getName());
+        LoadedVersion carried = null;
+        try (var pipeline = new ImportPipeline<>(versions, configuration.importPrefetch(), history -> prepareList(blocklistParser, history.getUrl(), listMetrics))) {
+            for (var versionIndex = 1; pipeline.hasNext(); versionIndex++) {
+                var history = versions.get(versionIndex - 1);
+                LOGGER.info("History import: {} of {}", versionIndex, versionCount);
+                var createdOn = Instant.ofEpochSecond(history.getCommitEpoch());
+                var prepared = pipeline.next();
+                carried = importVersion(list.getName(), blocklistParser, history.getUrl(), list.getId(), createdOn, prepared, carried);
+                listMetrics.add("versions", 1);
             }
-        });
+            listMetrics.finished(true);
+        } catch (RuntimeException e) {
+            listMetrics.finished(false);
+            throw e;
+        }
+    }
+
+    private static LoadedVersion importVersion(String listName, BlocklistParser<Domain> parser, String url, UUID blocklistId, Instant createdOn,
+                                               CompletableFuture<PreparedList> prepared, LoadedVersion carried) {
+        for (var attempt = 1; ; attempt++) {
+            try {
+                if (attempt > 1 && prepared.isCompletedExceptionally()) {
+                    // a failed download or parse is retried within the attempt, so failing again counts against it
+                    prepared = CompletableFuture.completedFuture(prepareList(parser, url, metrics.list(blocklistId, listName)));
+                }
+                var previousVersion = carried != null ? carried.getVersion() : loadListsPreviousVersion(blocklistId).orElse(null);
+                if (isNewerThan(previousVersion, createdOn)) {
+                    return carried;
+                }
+                if (previousVersion == null) {
+                    LOGGER.warn("No previous version found for list {}: {}", listName, blocklistId);
+                }
+                var loaded = loadPreparedList(listName, parser, blocklistId, createdOn, previousVersion, prepared.join(), carried);
+                return loaded != null ? loaded : carried;
+            } catch (Throwable e) {
+                LOGGER.error("Attempt {} Failed to import {}", attempt, url, e);
+                if (!listRetryPolicy.canRetry(attempt)) {
+                    throw new RuntimeException("Unable to load list " + listName + ": " + url, e);
+                }
+            }
+            sleepBeforeRetry(listRetryPolicy.delay(attempt), url);
+            // the carried version may no longer be the latest if a partial load was left behind
+            carried = null;
+        }
+    }
+
+    private static void sleepBeforeRetry(Duration delay, String url) {
+        LOGGER.info("Retrying {} in {} seconds", url, delay.toSeconds());
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry " + url, e);
+        }
     }
 
-    private static BlocklistParser<Domain> getParser(String format) {
+    static BlocklistParser<Domain> getParser(String format) {
         if ("hosts".equals(format)) {
             return new HostsParser();
         }
@@ -71,108 +493,531 @@ public class App {
         throw new IllegalArgumentException("Unknown list format: " + format);
     }
 
-    private static boolean parseList(String listName, BlocklistParser<Domain> parser, String url, UUID blocklistId, Instant createdOn, int attempt) {
-        Version createdVersion = null;
+    /**
+     * New parsers of the same format as the given one, for parsing on several threads at once.
+     */
+    static Supplier<BlocklistParser<Domain>> parsers(BlocklistParser<Domain> parser) {
+        if (parser instanceof HostsParser) {
+            return HostsParser::new;
+        }
+        if (parser instanceof DomainListParser) {
+            return DomainListParser::new;
+        }
+        throw new IllegalArgumentException("Unknown parser: " + parser.getClass().getName());
+    }
+
+    /**
+     * Loads the current version of a list. Returns false if the load failed; retrying is left to the caller.
+     */
+    static boolean parseList(String listName, BlocklistParser<Domain> parser, String url, UUID blocklistId, Instant createdOn, boolean conditionalFetch) {
+        return refreshList(listName, parser, url, blocklistId, createdOn, conditionalFetch) != RefreshSchedule.Outcome.FAILED;
+    }
+
+    /**
+     * Loads the current version of a list, reporting whether a new version was loaded.
+     */
+    static RefreshSchedule.Outcome refreshList(String listName, BlocklistParser<Domain> parser, String url, UUID blocklistId, Instant createdOn,
+                                               boolean conditionalFetch) {
+        var listMetrics = metrics.list(blocklistId, listName);
         try {
-            var optionalPreviousVersion= loadListsPreviousVersion(blocklistId);
-            TreeSet<Domain> previousEntries = new TreeSet<>();
-            var previousVersion = optionalPreviousVersion.orElse(null);
-            if (previousVersion != null) {
-                if (previousVersion.getLastSeen().isAfter(createdOn) || previousVersion.getLastSeen().equals(createdOn)) {
-                    LOGGER.warn("Previous version {} is newer then current version: {} >= {}. Skipping.", previousVersion.getId(), previousVersion.getLastSeen(), createdOn);
-                    return true;
-                }
-                var previousParsedList = client.getFullList(optionalPreviousVersion.get());
-                previousEntries.addAll(previousParsedList.getRecords());
-            } else {
+            Version previousVersion;
+            try (var ignored = listMetrics.phase("previousVersion")) {
+                previousVersion = loadListsPreviousVersion(blocklistId).orElse(null);
+            }
+            var fetchState = FetchState.EMPTY;
+            if (isNewerThan(previousVersion, createdOn)) {
+                return RefreshSchedule.Outcome.UNCHANGED;
+            }
+            if (previousVersion == null) {
                 LOGGER.warn("No previous version found for list {}: {}", listName, blocklistId);
+            } else if (conditionalFetch) {
+                var storedState = fetchStates.read(blocklistId);
+                if (storedState.appliesTo(url, previousVersion.getId())) {
+                    fetchState = storedState;
+                }
             }
-            var parsedList = parser.parseUrl(url);
-            if (parsedList.getRecords().isEmpty()) {
-                LOGGER.warn("List {} is empty! Url: {}", listName, url);
-                return true;
+            try (var download = fetch(parser, url, fetchState, useExternalSort(previousVersion), listMetrics)) {
+                if (previousVersion != null && isUnchangedDownload(download, fetchState)) {
+                    LOGGER.info("List {} is unchanged upstream, updating last seen only", listName);
+                    markSeen(previousVersion, createdOn);
+                    saveFetchState(conditionalFetch, blocklistId, download, previousVersion);
+                    return RefreshSchedule.Outcome.UNCHANGED;
+                }
+                var loaded = loadPreparedList(listName, parser, blocklistId, createdOn, previousVersion, prepareList(parser, download, previousVersion, listMetrics), null);
+                if (loaded == null) {
+                    return RefreshSchedule.Outcome.UNCHANGED;
+                }
+                saveFetchState(conditionalFetch, blocklistId, download, loaded.getVersion());
+                var changed = previousVersion == null || !loaded.getVersion().getId().equals(previousVersion.getId());
+                return changed ? RefreshSchedule.Outcome.CHANGED : RefreshSchedule.Outcome.UNCHANGED;
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Failed to parse {}", url, e);
+            return RefreshSchedule.Outcome.FAILED;
+        }
+    }
+
+    private static ListDownloader.Download download(String url, FetchState fetchState, LoaderMetrics.ListMetrics listMetrics) {
+        try (var ignored = listMetrics.phase("download")) {
+            var download = downloader.download(url, fetchState);
+            listMetrics.add("downloadedBytes", download.getSize());
+            metrics.increment("upstreamBytes", download.getSize());
+            return download;
+        }
+    }
+
+    /**
+     * Whether a list is parsed while it downloads and diffed through sorted runs on disk rather than in memory:
+     * always with streaming parse enabled, otherwise when the previous version is larger than the external sort
+     * threshold. A list without a previous version is measured once downloaded, by {@link #exceedsExternalSortThreshold}.
+     */
+    private static boolean useExternalSort(Version previousVersion) {
+        var threshold = configuration.externalSortThreshold();
+        return configuration.streamingParse()
+                || (threshold > 0 && previousVersion != null && previousVersion.getNumEntries() > threshold);
+    }
+
+    /**
+     * Downloads the list. With external sort the list is parsed while it downloads and the parsed entries come
+     * back with the download; otherwise it is saved to be parsed by {@link #prepareList}.
+     */
+    private static ListDownloader.Download fetch(BlocklistParser<Domain> parser, String url, FetchState fetchState,
+                                                 boolean externalSort, LoaderMetrics.ListMetrics listMetrics) {
+        if (!externalSort) {
+            return download(url, fetchState, listMetrics);
+        }
+        var streamingParser = new StreamingListParser(parsers(parser), parsePermits, configuration.spillDirectory(), configuration.spillRunEntries());
+        try (var ignored = listMetrics.phase("downloadAndParse")) {
+            var download = downloader.stream(url, fetchState, streamingParser::parse);
+            listMetrics.add("downloadedBytes", download.getSize());
+            metrics.increment("upstreamBytes", download.getSize());
+            if (download.getResult() != null) {
+                recordExternalParse(listMetrics, download.getResult());
+            }
+            return download;
+        }
+    }
+
+    /**
+     * Whether a saved download with no previous version to go by has more lines than the external sort threshold.
+     * Counting stops at the threshold.
+     */
+    private static boolean exceedsExternalSortThreshold(ListDownloader.Download download) {
+        var threshold = configuration.externalSortThreshold();
+        if (threshold <= 0) {
+            return false;
+        }
+        try (var lines = download.lines()) {
+            return lines.limit(threshold + 1L).count() > threshold;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PreparedList parseExternally(BlocklistParser<Domain> parser, ListDownloader.Download download, LoaderMetrics.ListMetrics listMetrics) {
+        var streamingParser = new StreamingListParser(parsers(parser), parsePermits, configuration.spillDirectory(), configuration.spillRunEntries());
+        StreamingListParser.Result parsed;
+        try (var lines = download.lines(); var ignored = listMetrics.phase("parse")) {
+            parsed = streamingParser.parse(lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (parsed.getParsedSha256() == null) {
+            LOGGER.warn("The parser gives other records for the entries of {}, parsing it in memory", download.getUrl());
+            return parseInMemory(parser, download, listMetrics);
+        }
+        recordExternalParse(listMetrics, parsed);
+        return new PreparedList(download.getUrl(), parsed.getParsedSha256(), parsed.getEntries());
+    }
+
+    private static void recordExternalParse(LoaderMetrics.ListMetrics listMetrics, StreamingListParser.Result parsed) {
+        listMetrics.set("entries", parsed.getEntries().size());
+        listMetrics.set("entriesBytes", parsed.getEntries().sizeInBytes());
+        listMetrics.set("spilledRuns", parsed.getSpilledRuns());
+        recordParseThroughput(listMetrics, "external", parsed.getEntries().size(), parsed.getParseNanos());
+    }
+
+    private static void recordParseThroughput(LoaderMetrics.ListMetrics listMetrics, String sort, long entries, long nanos) {
+        var entriesPerSecond = nanos == 0 ? 0 : entries * 1_000_000_000L / nanos;
+        listMetrics.set("parsedEntriesPerSecond", entriesPerSecond);
+        metrics.increment(sort + "SortedLists");
+        LOGGER.debug("Parsed {} entries with {} sort at {} entries/s", entries, sort, entriesPerSecond);
+    }
+
+    private static PreparedList prepareList(BlocklistParser<Domain> parser, String url, LoaderMetrics.ListMetrics listMetrics) {
+        // history versions are prepared ahead of the versions before them, so their sizes are not known yet
+        try (var download = fetch(parser, url, FetchState.EMPTY, useExternalSort(null), listMetrics)) {
+            return prepareList(parser, download, null, listMetrics);
+        }
+    }
+
+    private static PreparedList prepareList(BlocklistParser<Domain> parser, ListDownloader.Download download,
+                                            Version previousVersion, LoaderMetrics.ListMetrics listMetrics) {
+        if (download instanceof ListDownloader.StreamedDownload<?> streamed
+                && streamed.getResult() instanceof StreamingListParser.Result parsed) {
+            if (parsed.getParsedSha256() != null) {
+                return new PreparedList(download.getUrl(), parsed.getParsedSha256(), parsed.getEntries());
+            }
+            // nothing was saved to parse again
+            LOGGER.warn("The parser gives other records for the entries of {}, downloading it again to parse in memory", download.getUrl());
+            try (var saved = download(download.getUrl(), FetchState.EMPTY, listMetrics)) {
+                return parseInMemory(parser, saved, listMetrics);
+            }
+        }
+        if (previousVersion == null && exceedsExternalSortThreshold(download)) {
+            return parseExternally(parser, download, listMetrics);
+        }
+        if (parsePool != null && download.getSize() >= configuration.parallelParseBytes()) {
+            acquireParsePermit(download);
+            try (var ignored = listMetrics.phase("parse")) {
+                var started = System.nanoTime();
+                var parsed = new ParallelListParser(parsers(parser), parsePool).parse(download.getFile());
+                listMetrics.set("entries", parsed.getEntries().size());
+                listMetrics.set("entriesBytes", parsed.getEntries().sizeInBytes());
+                recordParseThroughput(listMetrics, "parallel", parsed.getEntries().size(), System.nanoTime() - started);
+                return new PreparedList(download.getUrl(), parsed.getParsedSha256(), parsed.getEntries());
+            } finally {
+                parsePermits.release();
+            }
+        }
+        return parseInMemory(parser, download, listMetrics);
+    }
+
+    private static PreparedList parseInMemory(BlocklistParser<Domain> parser, ListDownloader.Download download, LoaderMetrics.ListMetrics listMetrics) {
+        acquireParsePermit(download);
+        try (var lines = download.lines(); var ignored = listMetrics.phase("parse")) {
+            var started = System.nanoTime();
+            var parsedList = parser.parseStream(lines);
+            var entries = DomainStore.copyOf(parsedList.getRecords(), Domain::toString);
+            listMetrics.set("entries", entries.size());
+            listMetrics.set("entriesBytes", entries.sizeInBytes());
+            recordParseThroughput(listMetrics, "inMemory", entries.size(), System.nanoTime() - started);
+            return new PreparedList(download.getUrl(), parsedList.getParsedSha(), entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            parsePermits.release();
+        }
+    }
+
+    private static void acquireParsePermit(ListDownloader.Download download) {
+        try {
+            parsePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to parse " + download.getUrl(), e);
+        }
+    }
+
+    /**
+     * Rebuilds the entries of a version from an older local snapshot and the changes the API reports since that
+     * snapshot's version. The result is only used if it has as many entries as the version and hashes to its
+     * parsed SHA-256; otherwise, or if the API does not offer changes, the version is loaded in full.
+     */
+    private static Optional<DomainStore> patchSnapshot(Version version, BlocklistParser<Domain> parser) {
+        var snapshot = snapshotCache.latest(version.getBlocklistId())
+                .filter(cached -> !cached.getVersionId().equals(version.getId()));
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+        var since = snapshot.get().getVersionId();
+        try {
+            var changes = client.getEntryChanges(version, since);
+            if (changes.isEmpty()) {
+                return Optional.empty();
+            }
+            var entries = changes.get().applyTo(snapshot.get().getEntries());
+            if (entries.size() != version.getNumEntries()) {
+                LOGGER.warn("Changes of version {} since {} give {} entries instead of {}, loading the version in full",
+                        version.getId(), since, entries.size(), version.getNumEntries());
+                return Optional.empty();
+            }
+            if (!hasParsedSha(entries, version, parser)) {
+                LOGGER.warn("Changes of version {} since {} do not give its parsed hash, loading the version in full",
+                        version.getId(), since);
+                metrics.increment("deltaEntryMismatches");
+                return Optional.empty();
+            }
+            LOGGER.info("Rebuilt version {} from the snapshot of version {}: {} added, {} removed", version.getId(), since,
+                    changes.get().getAdded().size(), changes.get().getRemoved().size());
+            metrics.increment("deltaEntryLoads");
+            return Optional.of(entries);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to load changes of version {} since {}, loading the version in full: {}", version.getId(), since, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Whether the list's parser gives the entries the parsed SHA-256 of the version.
+     */
+    private static boolean hasParsedSha(DomainStore entries, Version version, BlocklistParser<Domain> parser) {
+        var expected = version.getParsedSha256();
+        return expected != null && ParserHash.of(parsers(parser).get(), entries, entries.size())
+                .filter(expected::equalsIgnoreCase)
+                .isPresent();
+    }
+
+    /**
+     * Loads the entries of a version from the API. Versions above the external sort threshold are sorted through
+     * runs on disk into a memory-mapped store instead of on the heap.
+     */
+    private static DomainStore loadEntries(Version version) {
+        if (!useExternalSort(version)) {
+            return client.getFullList(version);
+        }
+        return client.getFullList(version, lines -> SpillingSorter.sort(lines.iterator(), configuration.spillDirectory(), configuration.spillRunEntries()));
+    }
+
+    /**
+     * Diffs a prepared list against the previous version and uploads the changes.
+     * Returns the version that represents the list afterwards, or null if the list was empty and nothing was loaded.
+     */
+    private static LoadedVersion loadPreparedList(String listName, BlocklistParser<Domain> parser, UUID blocklistId, Instant createdOn,
+                                                  Version previousVersion, PreparedList prepared, LoadedVersion carried) {
+        var currentEntries = prepared.getEntries();
+        if (currentEntries.isEmpty()) {
+            LOGGER.warn("List {} is empty!", listName);
+            return null;
+        }
+        if (previousVersion != null && prepared.getParsedSha256().equalsIgnoreCase(String.valueOf(previousVersion.getParsedSha256()))) {
+            LOGGER.info("List {} has the same entries as version {}, updating last seen only", listName, previousVersion.getId());
+            markSeen(previousVersion, createdOn);
+            return new LoadedVersion(previousVersion, currentEntries);
+        }
+        var checkpoint = resumableCheckpoint(listName, blocklistId, previousVersion, prepared);
+        var listMetrics = metrics.list(blocklistId, listName);
+        var previousEntries = DomainStore.EMPTY;
+        if (previousVersion != null) {
+            if (carried != null && carried.getVersion().getId().equals(previousVersion.getId()) && carried.getEntries() != null) {
+                previousEntries = carried.getEntries();
+            } else {
+                try (var ignored = listMetrics.phase("previousEntries")) {
+                    previousEntries = snapshotCache.read(previousVersion)
+                            .or(() -> patchSnapshot(previousVersion, parser))
+                            .orElseGet(() -> loadEntries(previousVersion));
+                }
+            }
+        }
+        listMetrics.set("previousEntries", previousEntries.size());
+        LOGGER.debug("List {}: previous version {} entries in {} KiB, current version {} entries in {} KiB", listName,
+                previousEntries.size(), previousEntries.sizeInBytes() / 1024, currentEntries.size(), currentEntries.sizeInBytes() / 1024);
+        var diff = entryDiff(previousEntries, currentEntries);
+        // with the dictionary only the id sets are needed from here on
+        previousEntries = null;
+        var version = new Version(blocklistId, originalSha256(parser, prepared.getUrl()), prepared.getParsedSha256(), currentEntries.size(), createdOn, false);
+        Version createdVersion = null;
+        UploadJournal.Writer journal = null;
+        EntryPeriodQueue.Segment segment = null;
+        try {
+            if (checkpoint != null) {
+                createdVersion = checkpoint.getVersion();
+                journal = uploadJournal.resume(checkpoint);
+                segment = entryPeriodQueue.isEnabled() ? entryPeriodQueue.resume(checkpoint) : null;
+            } else {
+                createdVersion = client.createVersion(version);
+                journal = uploadJournal.start(createdVersion, previousVersion);
+                segment = entryPeriodQueue.isEnabled() ? entryPeriodQueue.start(createdVersion, previousVersion) : null;
             }
-            var version = new Version(blocklistId, parsedList, createdOn, false);
-            createdVersion = client.createVersion(version);
             var loadStarted = Instant.now();
-            var noChanges = createEntryPeriods(listName, previousVersion, previousEntries, createdVersion, parsedList.getRecords());
+            var noChanges = createEntryPeriods(listName, previousVersion, createdVersion, diff, journal, segment, checkpoint, listMetrics);
             LOGGER.info("List loaded after {} seconds", (Instant.now().toEpochMilli() - loadStarted.toEpochMilli()) / 1000.0);
             if (noChanges) {
                 LOGGER.warn("No change detected for list {}", listName);
                 client.deleteVersion(createdVersion);
-                if (previousVersion != null) {
-                    previousVersion.setParsedSha256(version.getParsedSha256());
-                    previousVersion.setLastSeen(createdOn);
-                    client.updateVersion(previousVersion);
+                deleteCheckpoint(blocklistId);
+                createdVersion = null;
+                if (previousVersion == null) {
+                    return null;
                 }
-            } else {
-                createdVersion.setFullyLoaded(true);
-                client.updateVersion(createdVersion);
+                previousVersion.setParsedSha256(version.getParsedSha256());
+                markSeen(previousVersion, createdOn);
+                snapshotCache.write(previousVersion, currentEntries);
+                return new LoadedVersion(previousVersion, currentEntries);
             }
-            return true;
+            createdVersion.setFullyLoaded(true);
+            createdVersion.setLastSeen(createdOn);
+            client.updateVersion(createdVersion);
+            deleteCheckpoint(blocklistId);
+            snapshotCache.write(createdVersion, currentEntries);
+            return new LoadedVersion(createdVersion, currentEntries);
         } catch (Throwable e) {
-            LOGGER.error("Attempt {} Failed to parse {}, due to {}. Cause: {}", attempt, url, e.getMessage(), e.getCause());
-            e.printStackTrace();
-            if (createdVersion != null) {
-                LOGGER.warn("Deleting list version {} for blocklist {}, due to error.", createdVersion.getId(), url);
+            if (createdVersion != null && (uploadJournal.isEnabled() || entryPeriodQueue.isEnabled())) {
+                LOGGER.warn("Keeping partially loaded version {} for blocklist {}, the next attempt resumes from its checkpoint.", createdVersion.getId(), listName);
+            } else if (createdVersion != null) {
+                LOGGER.warn("Deleting list version {} for blocklist {}, due to error.", createdVersion.getId(), listName);
                 client.deleteVersion(createdVersion);
             }
-            if (attempt < 3) {
-                try {
-                    Thread.sleep(90000);
-                    return parseList(listName, parser, url, blocklistId, createdOn, attempt+1);
-                } catch (InterruptedException interruptedException) {
-                    interruptedException.printStackTrace();
-                }
+            throw e;
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            if (segment != null) {
+                segment.close();
             }
-            return false;
         }
     }
 
-    private static boolean createEntryPeriods(String listName, Version previousVersion, NavigableSet<Domain> previousEntries, Version currentVersion, NavigableSet<Domain> currentEntries) {
-        var apiRequests = new ArrayList<CompletableFuture<Boolean>>();
-        TreeSet<Domain> allDomains = new TreeSet<>(previousEntries);
-        allDomains.addAll(currentEntries);
-        var addedCount = 0;
-        var removedCount = 0;
-        var unchangedCount = 0;
-        for(Domain entry : allDomains) {
-            if (!previousEntries.contains(entry)) {
-                apiRequests.add(client.startEntryPeriod(currentVersion, entry));
-                addedCount++;
-            } else if (!currentEntries.contains(entry)) {
-                apiRequests.add(client.endEntryPeriod(previousVersion, entry));
-                removedCount++;
-            } else {
-                unchangedCount++;
+    /**
+     * The checkpoint of an earlier, failed load of the same entries against the same previous version.
+     * A checkpoint of anything else is discarded together with its version.
+     */
+    private static UploadJournal.Checkpoint resumableCheckpoint(String listName, UUID blocklistId, Version previousVersion, PreparedList prepared) {
+        var checkpoint = (entryPeriodQueue.isEnabled() ? entryPeriodQueue.read(blocklistId) : uploadJournal.read(blocklistId)).orElse(null);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (checkpoint.resumes(previousVersion, prepared)) {
+            LOGGER.info("Resuming load of version {} for list {}: {} started and {} ended entry periods already confirmed",
+                    checkpoint.getVersion().getId(), listName, checkpoint.getConfirmedAdded().size(), checkpoint.getConfirmedRemoved().size());
+            return checkpoint;
+        }
+        LOGGER.info("Checkpoint of version {} for list {} does not match the current entries, starting over", checkpoint.getVersion().getId(), listName);
+        client.deleteVersion(checkpoint.getVersion());
+        deleteCheckpoint(blocklistId);
+        return null;
+    }
+
+    private static void deleteCheckpoint(UUID blocklistId) {
+        uploadJournal.delete(blocklistId);
+        entryPeriodQueue.delete(blocklistId);
+    }
+
+    private static boolean isNewerThan(Version previousVersion, Instant createdOn) {
+        if (previousVersion != null && !previousVersion.getLastSeen().isBefore(createdOn)) {
+            LOGGER.warn("Previous version {} is newer then current version: {} >= {}. Skipping.", previousVersion.getId(), previousVersion.getLastSeen(), createdOn);
+            return true;
+        }
+        return false;
+    }
+
+    private static void markSeen(Version version, Instant lastSeen) {
+        version.setLastSeen(lastSeen);
+        client.updateVersion(version);
+    }
+
+    /**
+     * A download is known to match the previous version when the server answered 304 or its bytes hash to those
+     * of the last download of this url found to match that version. The body hash is not the raw hash versions
+     * store, so it is never compared with the version's.
+     */
+    private static boolean isUnchangedDownload(ListDownloader.Download download, FetchState fetchState) {
+        return download.isNotModified() || download.getBodySha256().equalsIgnoreCase(String.valueOf(fetchState.getBodySha256()));
+    }
+
+    /**
+     * The raw SHA-256 the parser reports for the list, which is what versions store. It is not known to be a hash
+     * of the downloaded bytes, so the parser fetches the list itself; only lists that get a new version need it.
+     */
+    private static String originalSha256(BlocklistParser<Domain> parser, String url) {
+        return parsers(parser).get().parseUrl(url).getOriginalSha();
+    }
+
+    private static void saveFetchState(boolean conditionalFetch, UUID blocklistId, ListDownloader.Download download, Version version) {
+        if (conditionalFetch) {
+            fetchStates.write(blocklistId, download.toFetchState(version.getId()));
+        }
+    }
+
+    /**
+     * The diff of the previous entries against the current ones. With the domain dictionary both sides are
+     * turned into id sets right away, so the previous entries' store is not held while the changes upload.
+     */
+    private static Consumer<SortedDiff.Sink<String>> entryDiff(DomainStore previousEntries, DomainStore currentEntries) {
+        var dictionary = dictionaryForDiff();
+        if (dictionary == null) {
+            return sink -> DomainStore.diff(previousEntries, currentEntries, sink);
+        }
+        var previousIds = DomainIdSet.of(previousEntries, dictionary);
+        var currentIds = DomainIdSet.of(currentEntries, dictionary);
+        return sink -> DomainIdSet.diff(previousIds, currentIds, sink);
+    }
+
+    /**
+     * The domain dictionary for a new diff, or null without one. A dictionary that holds more than the configured
+     * number of domains is replaced by an empty one; diffs still using it keep it until they finish.
+     */
+    private static DomainDictionary dictionaryForDiff() {
+        var dictionary = domainDictionary.get();
+        var maxDomains = configuration.domainDictionaryMaxDomains();
+        if (dictionary == null || maxDomains <= 0 || dictionary.size() <= maxDomains) {
+            return dictionary;
+        }
+        if (domainDictionary.compareAndSet(dictionary, new DomainDictionary())) {
+            LOGGER.info("Domain dictionary holds {} domains, more than {}; starting an empty one", dictionary.size(), maxDomains);
+            metrics.increment("dictionaryResets");
+        }
+        return domainDictionary.get();
+    }
+
+    private static boolean createEntryPeriods(String listName, Version previousVersion, Version currentVersion, Consumer<SortedDiff.Sink<String>> diff,
+                                              UploadJournal.Writer journal, EntryPeriodQueue.Segment segment, UploadJournal.Checkpoint checkpoint,
+                                              LoaderMetrics.ListMetrics listMetrics) {
+        var uploader = new EntryPeriodUploader(client, requestWindow.newTracker(), previousVersion, currentVersion, configuration.bulkBatchSize(),
+                journal, checkpoint, segment);
+        try {
+            try (var ignored = listMetrics.phase("diff")) {
+                diff.accept(uploader);
             }
-            if (apiRequests.size() > 80) {
-                waitForRequestsToComplete(apiRequests);
+            listMetrics.set("added", uploader.getAddedCount());
+            listMetrics.set("removed", uploader.getRemovedCount());
+            LOGGER.info("Loaded version of {}. Added {}, removed {}, unmodified {}, already confirmed {}", listName, uploader.getAddedCount(),
+                    uploader.getRemovedCount(), uploader.getUnchangedCount(), uploader.getSkippedCount());
+            try (var ignored = listMetrics.phase("upload")) {
+                waitForRequestsToComplete(uploader);
             }
+        } catch (Throwable e) {
+            // the journal and segment are closed next, so requests still in flight must be recorded first
+            uploader.awaitSent();
+            throw e;
         }
-        LOGGER.info("Loaded version of {}. Added {}, removed {}, unmodified {}", listName, addedCount, removedCount, unchangedCount);
-        waitForRequestsToComplete(apiRequests);
 
-        return addedCount == 0 && removedCount == 0;
+        return uploader.getAddedCount() == 0 && uploader.getRemovedCount() == 0;
     }
 
-    private static void waitForRequestsToComplete(ArrayList<CompletableFuture<Boolean>> apiRequests) {
+    private static void waitForRequestsToComplete(EntryPeriodUploader uploader) {
         try {
-            CompletableFuture.allOf(apiRequests.toArray(new CompletableFuture[0])).join();
+            uploader.finish();
         } catch (Throwable e) {
-            LOGGER.error("Failed updating entry periods: {}", e.getMessage());
-            e.printStackTrace();
+            LOGGER.error("Failed updating entry periods", e);
             throw e;
+        } finally {
+            LOGGER.info("Request window: limit {}, in flight {}, {} completed, {} failed, {} requests/second",
+                    requestWindow.getLimit(), requestWindow.getInFlight(), requestWindow.getCompleted(),
+                    requestWindow.getFailed(), String.format("%.1f", requestWindow.getThroughput()));
         }
     }
 
+    /**
+     * The newest fully loaded version of the list. Versions that were not fully loaded are deleted, except the
+     * one the upload journal or entry period queue checkpoints; if that version no longer exists, the checkpoint is dropped.
+     */
     private static Optional<Version> loadListsPreviousVersion(UUID blocklistId) {
-        var versions = client.getVersions(blocklistId);
-        for (Version version : versions) {
-            if (version.isFullyLoaded()) {
-                return Optional.of(version);
+        var pendingVersionId = entryPeriodQueue.pendingVersionId(blocklistId)
+                .or(() -> uploadJournal.pendingVersionId(blocklistId))
+                .orElse(null);
+        var pendingVersionFound = false;
+        try (var versions = client.getVersions(blocklistId)) {
+            var iterator = versions.iterator();
+            while (iterator.hasNext()) {
+                var version = iterator.next();
+                if (version.isFullyLoaded()) {
+                    if (pendingVersionId != null && !pendingVersionFound) {
+                        deleteCheckpoint(blocklistId);
+                    }
+                    return Optional.of(version);
+                }
+                if (version.getId().equals(pendingVersionId)) {
+                    pendingVersionFound = true;
+                    LOGGER.info("Keeping partially loaded version {} of blocklist {} to resume it", version.getId(), blocklistId);
+                    continue;
+                }
+                client.deleteVersion(version);
             }
-            client.deleteVersion(version);
+        }
+        if (pendingVersionId != null && !pendingVersionFound) {
+            deleteCheckpoint(blocklistId);
         }
         return Optional.empty();
     }
@@ -188,9 +1033,19 @@ public class App {
                 HISTORY_FILE_PATH_ARG = Paths.get(args[i+1]);
             }
 
+            if("--shard".equals(args[i])) {
+                SHARD_ARG = Shard.parse(args[i+1]);
+            }
+
+            if("--daemon".equals(args[i])) {
+                DAEMON_ARG = true;
+            }
+
             if("--help".equals(args[i])) {
                 System.out.println("--blocklist [UUID]");
                 System.out.println("--import [path]");
+                System.out.println("--shard [index/count]");
+                System.out.println("--daemon");
                 System.out.println("--help");
                 System.exit(0);
             }
@@ -4,7 +4,6 @@ import com.developerdan.blocklist.loader.entity.Blocklist;
 import com.developerdan.blocklist.loader.entity.Version;
 import com.developerdan.blocklist.tools.Domain;
 import com.developerdan.blocklist.tools.DomainListParser;
-import com.developerdan.blocklist.tools.ParsedList;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
@@ -14,29 +13,73 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class BlocklistClient extends ApiClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BlocklistClient.class);
     private final Configuration configuration;
-    private final HttpClient httpClient;
+    private final RetryPolicy retryPolicy;
+    private final LoaderMetrics metrics;
+    private final RequestWindow requestWindow;
+    private final LongAdder requestCount = new LongAdder();
+    private volatile boolean bulkEntryPeriodsSupported;
+    private volatile boolean gzipUploads;
+    private volatile boolean entryChangesSupported;
+    private static final Set<Integer> UNSUPPORTED_STATUSES = Set.of(405, 501);
+    private static final int MIN_GZIP_BYTES = 1024;
+    private static final int ENTRY_CHUNK_LINES = 50_000;
     private static final ObjectMapper MAPPER = new ObjectMapper()
             .registerModule(new ParameterNamesModule())
             .registerModule(new Jdk8Module())
             .registerModule(new JavaTimeModule());
 
     public BlocklistClient(Configuration configuration) {
+        this(configuration, new LoaderMetrics());
+    }
+
+    public BlocklistClient(Configuration configuration, LoaderMetrics metrics) {
+        this(configuration, metrics, null);
+    }
+
+    /**
+     * @param requestWindow the window entry period requests are sent under, which is told about each attempt of
+     *                      them; null if there is none
+     */
+    public BlocklistClient(Configuration configuration, LoaderMetrics metrics, RequestWindow requestWindow) {
+        super(configuration.apiHttpClient());
         this.configuration = configuration;
-        httpClient = buildHttpClient();
+        this.metrics = metrics;
+        this.requestWindow = requestWindow;
+        retryPolicy = new RetryPolicy(configuration.retryAttempts(), configuration.retryBaseDelay(), configuration.retryMaxDelay(),
+                () -> metrics.increment("apiRetries"));
+        bulkEntryPeriodsSupported = configuration.bulkEntryPeriods();
+        gzipUploads = configuration.apiGzipUploads();
+        entryChangesSupported = configuration.deltaEntries();
+    }
+
+    public boolean isBulkEntryPeriodsSupported() {
+        return bulkEntryPeriodsSupported;
     }
 
     public List<Blocklist> getLists() {
@@ -53,12 +96,17 @@ public class BlocklistClient extends ApiClient {
 
     public List<Blocklist> getLists(int page) {
         var url = buildUrl("/blocklists?page=" + page);
-        var request = buildHttpRequest(url)
+        var request = buildDecodedHttpRequest(url)
                 .GET().build();
         LOGGER.debug("Loading blocklists page {}", page);
         try {
-            var response = httpClient.send(request, new JsonBodyHandler<>(Blocklist[].class));
-            return Arrays.asList(response.body());
+            return retryPolicy.call("load blocklists page " + page, () -> {
+                var response = send("getLists", request, JsonBodyHandler.ofArrayElements(Blocklist.class));
+                assertStreamedStatus(response, 200, "load blocklists page " + page);
+                try (var lists = response.body().get()) {
+                    return lists.collect(Collectors.toList());
+                }
+            });
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
@@ -66,25 +114,35 @@ public class BlocklistClient extends ApiClient {
 
     public Blocklist getList(UUID id) {
         var url = buildUrl("/blocklists/" + id);
-        var request = buildHttpRequest(url)
+        var request = buildDecodedHttpRequest(url)
                 .GET().build();
         LOGGER.debug("Loading blocklist page {}", id);
         try {
-            var response = httpClient.send(request, new JsonBodyHandler<>(Blocklist.class));
-            return response.body();
+            return retryPolicy.call("load blocklist " + id, () -> {
+                var response = send("getList", request, new JsonBodyHandler<>(Blocklist.class));
+                assertStatus(response, 200, "load blocklist " + id);
+                return response.body().get();
+            });
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
 
-    public Version[] getVersions(UUID blocklistId) {
+    /**
+     * Versions of the blocklist, newest first. Versions are read from the response as the stream is consumed,
+     * so the stream must be closed.
+     */
+    public Stream<Version> getVersions(UUID blocklistId) {
         var url = buildUrl("/blocklists/" + blocklistId + "/versions");
-        var request = buildHttpRequest(url)
+        var request = buildDecodedHttpRequest(url)
                 .GET().build();
         LOGGER.trace("Loading versions for blocklist {}", blocklistId);
         try {
-            var response = httpClient.send(request, new JsonBodyHandler<>(Version[].class));
-            return response.body();
+            return retryPolicy.call("load versions of blocklist " + blocklistId, () -> {
+                var response = send("getVersions", request, JsonBodyHandler.ofArrayElements(Version.class));
+                assertStreamedStatus(response, 200, "load versions of blocklist " + blocklistId);
+                return response.body().get();
+            });
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
@@ -96,12 +154,12 @@ public class BlocklistClient extends ApiClient {
                 .POST(JsonBodyHandler.requestFromVersion(version)).build();
         try {
             LOGGER.trace("Creating new blocklist version for blocklist {}.", version.getBlocklistId());
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            response = send("createVersion", request, HttpResponse.BodyHandlers.ofString());
         } catch (IOException|InterruptedException e) {
             throw new ApiException(e);
         }
         if (response.statusCode() != 201) {
-            throw new ApiException("Unable to create version. Api Status: " + response.statusCode() + ", body: " + response.body());
+            throw new ApiException("Unable to create version. Api Status: " + response.statusCode() + ", body: " + response.body(), response.statusCode());
         }
         try {
             return MAPPER.readValue((String)response.body(), Version.class);
@@ -111,85 +169,359 @@ public class BlocklistClient extends ApiClient {
     }
 
     public Version updateVersion(Version version) {
-        HttpResponse response;
         var request = buildHttpRequest(buildUrl("/versions"))
                 .PUT(JsonBodyHandler.requestFromVersion(version)).build();
+        LOGGER.trace("Updating blocklist version {}.", version.getId());
+        var response = retryPolicy.call("update version " + version.getId(), () -> {
+            var updateResponse = send("updateVersion", request, HttpResponse.BodyHandlers.ofString());
+            if (updateResponse.statusCode() != 200) {
+                throw new ApiException("Unable to update version. Api Status: " + updateResponse.statusCode() + ", body: " + updateResponse.body(), updateResponse.statusCode());
+            }
+            return updateResponse;
+        });
         try {
-            LOGGER.trace("Updating blocklist version {}.", version.getId());
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException|InterruptedException e) {
-            throw new ApiException(e);
-        }
-        if (response.statusCode() != 200) {
-            throw new ApiException("Unable to update version. Api Status: " + response.statusCode() + ", body: " + response.body());
-        }
-        try {
-            return MAPPER.readValue((String)response.body(), Version.class);
+            return MAPPER.readValue(response.body(), Version.class);
         } catch (JsonProcessingException e) {
             throw new ApiException("Unable to parse version entity from response body: " + response.body(), e);
         }
     }
 
     public void deleteVersion(Version version) {
-        HttpResponse response;
         var url = buildUrl("/versions/" + version.getId());
         var request = buildHttpRequest(url)
                 .DELETE().build();
-        try {
-            LOGGER.warn("Deleting blocklist version {}.", version.getId());
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException|InterruptedException e) {
-            throw new ApiException(e);
-        }
-        if (response.statusCode() != 200) {
-            throw new ApiException("Unable to delete version. Api Status: " + response.statusCode() + ", body: " + response.body());
-        }
+        LOGGER.warn("Deleting blocklist version {}.", version.getId());
+        retryPolicy.call("delete version " + version.getId(), () -> {
+            var response = send("deleteVersion", request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new ApiException("Unable to delete version. Api Status: " + response.statusCode() + ", body: " + response.body(), response.statusCode());
+            }
+            return null;
+        });
     }
 
-    public CompletableFuture<Boolean> startEntryPeriod(Version initialVersion, Domain domain) {
+    /**
+     * Starts the domain's entry period. A retried request may have reached the API before, so a period that
+     * already exists counts as started.
+     */
+    public CompletableFuture<Boolean> startEntryPeriod(Version initialVersion, String domain) {
         var url = buildUrl("/blocklists/" + initialVersion.getBlocklistId() + "/versions/" + initialVersion.getId() + "/entries");
         var request = buildHttpRequest(url)
-                .POST(HttpRequest.BodyPublishers.ofString(domain.toString())).build();
+                .POST(HttpRequest.BodyPublishers.ofString(domain)).build();
         LOGGER.trace("Creating new entry period for blocklist {}, domain {}", initialVersion.getBlocklistId(), domain);
-        var future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
-        return future.thenApply(response -> {
-            if (response.statusCode() != 201) {
-                throw new ApiException("Unable to start entry period for <" + domain + ">. Api Status: " + response.statusCode() + ", body: " + response.body());
-            }
-            return true;
-        });
+        return retryPolicy.callAsync("start entry period for <" + domain + ">", () -> sendAsync("startEntryPeriod", request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 201 && !isAlreadyApplied(response, "start entry period for <" + domain + ">")) {
+                        throw new ApiException("Unable to start entry period for <" + domain + ">. Api Status: " + response.statusCode() + ", body: " + response.body(), response.statusCode());
+                    }
+                    return true;
+                }));
     }
 
-    public CompletableFuture<Boolean> endEntryPeriod(Version lastIncludedVersion, Domain domain) {
+    /**
+     * Ends the domain's entry period, which counts as ended if the API reports it was ended already.
+     */
+    public CompletableFuture<Boolean> endEntryPeriod(Version lastIncludedVersion, String domain) {
         var url = buildUrl("/blocklists/" + lastIncludedVersion.getBlocklistId() + "/versions/" + lastIncludedVersion.getId() + "/entries");
         var request = buildHttpRequest(url)
-                .PUT(HttpRequest.BodyPublishers.ofString(domain.toString())).build();
+                .PUT(HttpRequest.BodyPublishers.ofString(domain)).build();
         LOGGER.trace("Ending entry period for blocklist {}, domain {}", lastIncludedVersion.getBlocklistId(), domain);
-        var future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
-        return future.thenApply(response -> {
-            if (response.statusCode() != 201) {
-                throw new ApiException("Unable to end entry period. Version: " + lastIncludedVersion.getId() + ", <" + domain + ">. Api Status: " + response.statusCode() + ", body: " + response.body());
+        return retryPolicy.callAsync("end entry period for <" + domain + ">", () -> sendAsync("endEntryPeriod", request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 201 && !isAlreadyApplied(response, "end entry period for <" + domain + ">")) {
+                        throw new ApiException("Unable to end entry period. Version: " + lastIncludedVersion.getId() + ", <" + domain + ">. Api Status: " + response.statusCode() + ", body: " + response.body(), response.statusCode());
+                    }
+                    return true;
+                }));
+    }
+
+    public CompletableFuture<Boolean> startEntryPeriods(Version initialVersion, List<String> domains) {
+        return startEntryPeriods(initialVersion, domains, confirmed -> { });
+    }
+
+    /**
+     * Starts the entry periods of the domains in one bulk request, reporting them to {@code confirmed} once the API
+     * accepts them. Completes with false if the API does not support bulk requests; the domains then have to be
+     * sent one at a time with {@link #startEntryPeriod}.
+     */
+    public CompletableFuture<Boolean> startEntryPeriods(Version initialVersion, List<String> domains, Consumer<List<String>> confirmed) {
+        var url = buildUrl("/blocklists/" + initialVersion.getBlocklistId() + "/versions/" + initialVersion.getId() + "/entries/bulk");
+        LOGGER.trace("Creating {} entry periods for blocklist {}", domains.size(), initialVersion.getBlocklistId());
+        return sendBulk(url, "POST", domains, "start", confirmed);
+    }
+
+    public CompletableFuture<Boolean> endEntryPeriods(Version lastIncludedVersion, List<String> domains) {
+        return endEntryPeriods(lastIncludedVersion, domains, confirmed -> { });
+    }
+
+    /**
+     * Ends the entry periods of the domains in one bulk request, reporting them to {@code confirmed} once the API
+     * accepts them. Completes with false if the API does not support bulk requests.
+     */
+    public CompletableFuture<Boolean> endEntryPeriods(Version lastIncludedVersion, List<String> domains, Consumer<List<String>> confirmed) {
+        var url = buildUrl("/blocklists/" + lastIncludedVersion.getBlocklistId() + "/versions/" + lastIncludedVersion.getId() + "/entries/bulk");
+        LOGGER.trace("Ending {} entry periods for blocklist {}", domains.size(), lastIncludedVersion.getBlocklistId());
+        return sendBulk(url, "PUT", domains, "end", confirmed);
+    }
+
+    private CompletableFuture<Boolean> sendBulk(String url, String method, List<String> domains, String operation,
+                                                Consumer<List<String>> confirmed) {
+        if (!bulkEntryPeriodsSupported) {
+            return CompletableFuture.completedFuture(false);
+        }
+        var description = operation + " " + domains.size() + " entry periods";
+        var future = retryPolicy.callAsync(description, () -> sendBulkRequest(operation + "EntryPeriods", url, method, domains)
+                .thenApply(response -> {
+                    if (response.statusCode() == 200 || response.statusCode() == 201) {
+                        return true;
+                    }
+                    if (UNSUPPORTED_STATUSES.contains(response.statusCode())) {
+                        if (bulkEntryPeriodsSupported) {
+                            LOGGER.warn("Bulk entry periods are not supported by the API (status {}), falling back to one request per domain.", response.statusCode());
+                            bulkEntryPeriodsSupported = false;
+                        }
+                        return false;
+                    }
+                    throw new ApiException("Unable to " + description + ". Api Status: " + response.statusCode() + ", body: " + response.body(), response.statusCode());
+                }));
+        return future.thenApply(sent -> {
+            if (sent) {
+                confirmed.accept(domains);
             }
-            return true;
+            return sent;
         });
     }
 
-    public ParsedList<Domain> getFullList(Version version) {
-        var url = buildUrl("/versions/" + version.getId() + "/entries");
+    /**
+     * Sends a bulk request. A compressed request the API rejects as unsupported media is sent again uncompressed,
+     * and later bulk requests are no longer compressed.
+     */
+    private CompletableFuture<HttpResponse<String>> sendBulkRequest(String clientMethod, String url, String method, List<String> domains) {
+        var request = buildBulkRequest(url, method, domains);
+        return sendAsync(clientMethod, request, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    if (response.statusCode() != 415 || request.headers().firstValue("Content-Encoding").isEmpty()) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    if (gzipUploads) {
+                        LOGGER.warn("The API does not accept gzip compressed entry uploads, sending them uncompressed.");
+                        gzipUploads = false;
+                    }
+                    return sendAsync(clientMethod, buildBulkRequest(url, method, domains), HttpResponse.BodyHandlers.ofString());
+                });
+    }
+
+    private HttpRequest buildBulkRequest(String url, String method, List<String> domains) {
+        var body = new StringBuilder(domains.size() * 24);
+        for (String domain : domains) {
+            body.append(domain).append('\n');
+        }
         var request = buildHttpRequest(url)
+                .timeout(getSettings().getTransferTimeout())
+                .setHeader("Content-Type", "text/plain; charset=utf-8")
+                .header("X-Entry-Count", String.valueOf(domains.size()));
+        if (gzipUploads && body.length() >= MIN_GZIP_BYTES) {
+            metrics.increment("apiBytesBeforeCompression", body.length());
+            return request.header("Content-Encoding", "gzip")
+                    .method(method, ContentEncoding.gzip(body.toString())).build();
+        }
+        return request.method(method, HttpRequest.BodyPublishers.ofString(body.toString(), StandardCharsets.UTF_8)).build();
+    }
+
+    public DomainStore getFullList(Version version) {
+        return getFullList(version, lines -> DomainStore.copyOf(lines.iterator()));
+    }
+
+    /**
+     * Loads the entries of a version, handing the normalized domains to {@code collector} as they arrive.
+     */
+    public DomainStore getFullList(Version version, Function<Stream<String>, DomainStore> collector) {
+        var url = buildUrl("/versions/" + version.getId() + "/entries");
+        var request = buildDecodedHttpRequest(url)
+                .timeout(getSettings().getTransferTimeout())
                 .GET().build();
         LOGGER.trace("Loading entries for version {}", version.getId());
         try {
-            var parser = new DomainListParser();
-            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
-            var parsedList = parser.parseStream(response.body());
-            parsedList.setOriginalSha(version.getRawSha256());
-            return parsedList;
+            return retryPolicy.call("load entries of version " + version.getId(), () -> {
+                var response = send("getFullList", request, ContentEncoding.ofLines());
+                assertStreamedStatus(response, 200, "load entries of version " + version.getId());
+                try (var lines = response.body().get()) {
+                    return collector.apply(entryLines(lines));
+                }
+            });
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the entries that were added to and removed from the list between the {@code since} version and
+     * {@code version}, one {@code +domain} or {@code -domain} per line. Empty if the API can not diff the two
+     * versions or does not know one of them; if it does not offer changes at all (405 or 501), later calls return
+     * empty without asking again.
+     */
+    public Optional<EntryChanges> getEntryChanges(Version version, UUID since) {
+        if (!entryChangesSupported) {
+            return Optional.empty();
+        }
+        var url = buildUrl("/versions/" + version.getId() + "/entries/changes?since=" + since);
+        var request = buildDecodedHttpRequest(url)
+                .timeout(getSettings().getTransferTimeout())
+                .GET().build();
+        LOGGER.trace("Loading changes of version {} since version {}", version.getId(), since);
+        try {
+            return retryPolicy.call("load changes of version " + version.getId(), () -> {
+                var response = send("getEntryChanges", request, ContentEncoding.ofLines());
+                if (UNSUPPORTED_STATUSES.contains(response.statusCode())) {
+                    LOGGER.info("Entry changes are not supported by the API (status {}), loading full versions.", response.statusCode());
+                    entryChangesSupported = false;
+                    return Optional.<EntryChanges>empty();
+                }
+                if (response.statusCode() == 404 || response.statusCode() == 409 || response.statusCode() == 410) {
+                    LOGGER.debug("The API can not diff version {} against {} (status {})", version.getId(), since, response.statusCode());
+                    return Optional.<EntryChanges>empty();
+                }
+                assertStreamedStatus(response, 200, "load changes of version " + version.getId());
+                try (var lines = response.body().get()) {
+                    return Optional.of(parseEntryChanges(lines));
+                }
+            });
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
 
+    static EntryChanges parseEntryChanges(Stream<String> lines) {
+        var added = new ArrayList<String>();
+        var removed = new ArrayList<String>();
+        lines.map(String::trim).forEach(line -> {
+            if (line.length() < 2) {
+                return;
+            }
+            var domain = line.substring(1).trim().toLowerCase(Locale.ROOT);
+            if (line.charAt(0) == '+') {
+                added.add(domain);
+            } else if (line.charAt(0) == '-') {
+                removed.add(domain);
+            }
+        });
+        return new EntryChanges(DomainStore.copyOf(added.iterator()), DomainStore.copyOf(removed.iterator()));
+    }
+
+    /**
+     * Parses the plain text entry list of a version, one domain per line.
+     */
+    static DomainStore parseEntries(Stream<String> lines) {
+        return DomainStore.copyOf(entryLines(lines).iterator());
+    }
+
+    /**
+     * The domains {@link DomainListParser} reads from the entry list, so previous entries are normalized like the
+     * new list. Lines are parsed in chunks, with a parser per chunk, to hold no more than a chunk of records.
+     */
+    private static Stream<String> entryLines(Stream<String> lines) {
+        var iterator = lines.iterator();
+        var chunks = new Iterator<List<String>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public List<String> next() {
+                var chunk = new ArrayList<String>(ENTRY_CHUNK_LINES);
+                while (iterator.hasNext() && chunk.size() < ENTRY_CHUNK_LINES) {
+                    chunk.add(iterator.next());
+                }
+                return chunk;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                .flatMap(chunk -> new DomainListParser().parseStream(chunk.stream()).getRecords().stream())
+                .map(Domain::toString);
+    }
+
+    /**
+     * Number of requests sent to the API by this client.
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * Whether the API rejected a request because what it asks for is already done: a 409, or a client error
+     * saying the entry already exists.
+     */
+    private static boolean isAlreadyApplied(HttpResponse<String> response, String description) {
+        var status = response.statusCode();
+        var applied = status == 409 || (status >= 400 && status < 500
+                && response.body() != null && response.body().toLowerCase(Locale.ROOT).contains("already exists"));
+        if (applied) {
+            LOGGER.debug("Request to {} was already applied (status {})", description, status);
+        }
+        return applied;
+    }
+
+    private static void assertStatus(HttpResponse<?> response, int expectedStatus, String description) {
+        if (response.statusCode() != expectedStatus) {
+            throw new ApiException("Unable to " + description + ". Api Status: " + response.statusCode(), response.statusCode());
+        }
+    }
+
+    /**
+     * Like {@link #assertStatus(HttpResponse, int, String)} for a response streamed to the caller, closing the
+     * unread body when the status is not the expected one.
+     */
+    private static void assertStreamedStatus(HttpResponse<? extends Supplier<? extends BaseStream<?, ?>>> response,
+                                             int expectedStatus, String description) {
+        try {
+            assertStatus(response, expectedStatus, description);
+        } catch (ApiException e) {
+            try {
+                response.body().get().close();
+            } catch (RuntimeException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
+    private <T> HttpResponse<T> send(String method, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        requestCount.increment();
+        var startedNanos = System.nanoTime();
+        HttpResponse<T> response = null;
+        try {
+            response = exchange(request, bodyHandler);
+            return response;
+        } finally {
+            recordRequest(method, request, response, startedNanos);
+        }
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(String method, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        requestCount.increment();
+        var startedNanos = System.nanoTime();
+        return exchangeAsync(request, bodyHandler)
+                .whenComplete((response, error) -> {
+                    recordRequest(method, request, response, startedNanos);
+                    if (requestWindow != null) {
+                        requestWindow.recordAttempt(System.nanoTime() - startedNanos,
+                                response == null || RetryPolicy.isRetryableStatus(response.statusCode()));
+                    }
+                });
+    }
+
+    /**
+     * Records latency and size of a request; the response size is only known if the server sent a Content-Length.
+     */
+    private void recordRequest(String method, HttpRequest request, HttpResponse<?> response, long startedNanos) {
+        metrics.apiRequest(method, System.nanoTime() - startedNanos, response == null || response.statusCode() >= 400);
+        request.bodyPublisher().ifPresent(body -> metrics.increment("apiBytesSent", Math.max(0, body.contentLength())));
+        if (response != null) {
+            metrics.increment("apiBytesReceived", response.headers().firstValueAsLong("Content-Length").orElse(0));
+        }
+    }
+
     private String buildUrl(String url) {
         return configuration.blocklistApiBaseUrl() + url;
     }
@@ -197,7 +529,43 @@ public class BlocklistClient extends ApiClient {
     @Override
     protected HttpRequest.Builder buildHttpRequest(String url) {
         return super.buildHttpRequest(url)
-                .header("Authorization-Token", configuration.blocklistApiAuthToken())
-                .timeout(Duration.ofMinutes(8));
+                .header("Authorization-Token", configuration.blocklistApiAuthToken());
+    }
+
+    /**
+     * Request whose response is read through {@link ContentEncoding} or {@link JsonBodyHandler}, and so may come
+     * back compressed. Responses read as plain strings must not ask for compression.
+     */
+    private HttpRequest.Builder buildDecodedHttpRequest(String url) {
+        var builder = buildHttpRequest(url);
+        if (configuration.apiAcceptGzip()) {
+            builder.header("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        }
+        return builder;
+    }
+
+    /**
+     * Entries added to and removed from a list between two versions.
+     */
+    public static final class EntryChanges {
+        private final DomainStore added;
+        private final DomainStore removed;
+
+        EntryChanges(DomainStore added, DomainStore removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public DomainStore getAdded() {
+            return added;
+        }
+
+        public DomainStore getRemoved() {
+            return removed;
+        }
+
+        public DomainStore applyTo(DomainStore entries) {
+            return entries.patch(added, removed);
+        }
     }
 }
@@ -0,0 +1,96 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of permits that can be waited for without holding a thread. Permits are handed out in the order
+ * they were asked for. A limit of 0 never makes anyone wait.
+ */
+final class ConcurrencyLimit {
+    private final int limit;
+    private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int available;
+
+    ConcurrencyLimit(int limit) {
+        this.limit = limit;
+        this.available = limit;
+    }
+
+    /**
+     * Completes once a permit is available. The permit has to be {@link #release() released}.
+     */
+    CompletableFuture<Void> acquire() {
+        if (limit == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                return CompletableFuture.completedFuture(null);
+            }
+            var permit = new CompletableFuture<Void>();
+            waiting.add(permit);
+            return permit;
+        }
+    }
+
+    /**
+     * Blocks until a permit is available.
+     */
+    void acquireBlocking() throws InterruptedException {
+        var permit = acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                // the permit was granted while we were interrupted
+                release();
+            }
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void release() {
+        if (limit == 0) {
+            return;
+        }
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            // a waiter that gave up does not take the permit
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts the request once a permit is available and releases the permit when it completes.
+     */
+    <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> request) {
+        return acquire().thenCompose(ignored -> {
+            try {
+                return request.get();
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }).whenComplete((result, error) -> release());
+    }
+
+    synchronized int getWaiting() {
+        return waiting.size();
+    }
+}
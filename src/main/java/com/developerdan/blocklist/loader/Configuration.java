@@ -1,5 +1,12 @@
 package com.developerdan.blocklist.loader;
 
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
 public class Configuration {
 
     public String blocklistApiBaseUrl() {
@@ -12,6 +19,300 @@ public class Configuration {
         return assertNotNullOrEmpty(baseUrl, "Missing BLOCKLIST_API_AUTH_TOKEN environment variable.");
     }
 
+    public int listConcurrency() {
+        return intOrDefault("BLOCKLIST_LOADER_CONCURRENCY", 4);
+    }
+
+    public int hostConcurrency() {
+        return intOrDefault("BLOCKLIST_LOADER_HOST_CONCURRENCY", 2);
+    }
+
+    public boolean bulkEntryPeriods() {
+        return booleanOrDefault("BLOCKLIST_LOADER_BULK_ENTRIES", true);
+    }
+
+    /**
+     * Whether the previous version's entries may be fetched as changes since a locally cached version.
+     */
+    public boolean deltaEntries() {
+        return booleanOrDefault("BLOCKLIST_LOADER_DELTA_ENTRIES", true);
+    }
+
+    /**
+     * Whether lists are diffed as sorted ids of a dictionary shared by all lists of the run.
+     */
+    public boolean domainDictionary() {
+        return booleanOrDefault("BLOCKLIST_LOADER_DOMAIN_DICTIONARY", false);
+    }
+
+    /**
+     * Domains the dictionary may hold before it is replaced by an empty one; 0 for no limit.
+     */
+    public int domainDictionaryMaxDomains() {
+        return intOrDefault("BLOCKLIST_LOADER_DOMAIN_DICTIONARY_MAX_DOMAINS", 20_000_000);
+    }
+
+    /**
+     * Whether entry period operations go through a durable queue in the cache directory instead of being sent
+     * as the diff produces them.
+     */
+    public boolean entryPeriodQueue() {
+        return booleanOrDefault("BLOCKLIST_LOADER_ENTRY_PERIOD_QUEUE", true);
+    }
+
+    /**
+     * How many bytes of entry period operations the queue holds that the API did not acknowledge yet before the
+     * diff waits for it; 0 disables the limit.
+     */
+    public int entryPeriodQueueMaxPendingBytes() {
+        return intOrDefault("BLOCKLIST_LOADER_ENTRY_PERIOD_QUEUE_MAX_PENDING_BYTES", 64 << 20);
+    }
+
+    public int bulkBatchSize() {
+        return intOrDefault("BLOCKLIST_LOADER_BULK_BATCH_SIZE", 5000);
+    }
+
+    /**
+     * Whether API requests accept gzip compressed responses.
+     */
+    public boolean apiAcceptGzip() {
+        return booleanOrDefault("BLOCKLIST_LOADER_API_ACCEPT_GZIP", true);
+    }
+
+    /**
+     * Whether bulk entry uploads are sent gzip compressed. The API has to accept compressed request bodies;
+     * if it rejects one, uploads fall back to uncompressed bodies.
+     */
+    public boolean apiGzipUploads() {
+        return booleanOrDefault("BLOCKLIST_LOADER_API_GZIP_UPLOADS", false);
+    }
+
+    /**
+     * Client for the Blocklist API: short timeouts for JSON and single entry calls, a longer one for bulk
+     * uploads and entry downloads.
+     */
+    public HttpClientSettings apiHttpClient() {
+        return httpClientSettings("api", "BLOCKLIST_LOADER_API_", 10_000, 60_000, 480_000);
+    }
+
+    /**
+     * Client for upstream list downloads, which can be large and come from slow hosts.
+     */
+    public HttpClientSettings upstreamHttpClient() {
+        return httpClientSettings("upstream", "BLOCKLIST_LOADER_UPSTREAM_", 30_000, 600_000, 600_000);
+    }
+
+    public int requestWindowInitial() {
+        return intOrDefault("BLOCKLIST_LOADER_WINDOW_INITIAL", 80);
+    }
+
+    public int requestWindowMin() {
+        return intOrDefault("BLOCKLIST_LOADER_WINDOW_MIN", 4);
+    }
+
+    public int requestWindowMax() {
+        return intOrDefault("BLOCKLIST_LOADER_WINDOW_MAX", 400);
+    }
+
+    public Duration requestWindowLatencyTarget() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_WINDOW_LATENCY_TARGET_MS", 2000));
+    }
+
+    public int importPrefetch() {
+        return intOrDefault("BLOCKLIST_LOADER_IMPORT_PREFETCH", 4);
+    }
+
+    public int parseConcurrency() {
+        return intOrDefault("BLOCKLIST_LOADER_PARSE_CONCURRENCY", Runtime.getRuntime().availableProcessors());
+    }
+
+    public boolean virtualThreads() {
+        return booleanOrDefault("BLOCKLIST_LOADER_VIRTUAL_THREADS", true);
+    }
+
+    public int retryAttempts() {
+        return intOrDefault("BLOCKLIST_LOADER_RETRY_ATTEMPTS", 5);
+    }
+
+    public Duration retryBaseDelay() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_RETRY_BASE_DELAY_MS", 500));
+    }
+
+    public Duration retryMaxDelay() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_RETRY_MAX_DELAY_MS", 30000));
+    }
+
+    public int listAttempts() {
+        return intOrDefault("BLOCKLIST_LOADER_LIST_ATTEMPTS", 4);
+    }
+
+    public Duration listRetryBaseDelay() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_LIST_RETRY_DELAY_MS", 15000));
+    }
+
+    public boolean streamingParse() {
+        return booleanOrDefault("BLOCKLIST_LOADER_STREAMING_PARSE", false);
+    }
+
+    /**
+     * Lists whose previous version has more entries than this, or whose download has more lines when there is no
+     * previous version to go by, are parsed and diffed through sorted runs on disk, as if streaming parse was
+     * enabled for them; 0, the default, disables the switch.
+     */
+    public int externalSortThreshold() {
+        return intOrDefault("BLOCKLIST_LOADER_EXTERNAL_SORT_THRESHOLD", 0);
+    }
+
+    /**
+     * Downloads of at least this many bytes are parsed in chunks on all parse threads, unless they are parsed
+     * while downloading; 0 disables parallel parsing.
+     */
+    public int parallelParseBytes() {
+        return intOrDefault("BLOCKLIST_LOADER_PARALLEL_PARSE_BYTES", 0);
+    }
+
+    public int parseThreads() {
+        return intOrDefault("BLOCKLIST_LOADER_PARSE_THREADS", Runtime.getRuntime().availableProcessors());
+    }
+
+    public int spillRunEntries() {
+        return intOrDefault("BLOCKLIST_LOADER_SPILL_RUN_ENTRIES", 500_000);
+    }
+
+    public Path spillDirectory() {
+        return pathOrEmpty("BLOCKLIST_LOADER_SPILL_DIR")
+                .orElseGet(() -> Paths.get(System.getProperty("java.io.tmpdir"), "list-loader-spill"));
+    }
+
+    /**
+     * Port of the embedded metrics endpoint; 0 disables it.
+     */
+    public int metricsPort() {
+        return intOrDefault("BLOCKLIST_LOADER_METRICS_PORT", 0);
+    }
+
+    public Optional<Path> metricsFile() {
+        return pathOrEmpty("BLOCKLIST_LOADER_METRICS_FILE");
+    }
+
+    public Optional<Path> cacheDirectory() {
+        return pathOrEmpty("BLOCKLIST_LOADER_CACHE_DIR");
+    }
+
+    /**
+     * The share of the lists this node loads, {@code index/count}; empty to load every list.
+     */
+    public Optional<Shard> shard() {
+        var value = System.getenv("BLOCKLIST_LOADER_SHARD");
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Shard.parse(value.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid BLOCKLIST_LOADER_SHARD environment variable: " + value, e);
+        }
+    }
+
+    /**
+     * Directory shared by sharded nodes to hand over the lists of nodes that stopped; defaults to {@code leases}
+     * in the cache directory. Without one, each node only loads its own shard.
+     */
+    public Optional<Path> leaseDirectory() {
+        return pathOrEmpty("BLOCKLIST_LOADER_LEASE_DIR")
+                .or(() -> cacheDirectory().map(directory -> directory.resolve("leases")));
+    }
+
+    public Duration leaseTtl() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_LEASE_TTL_MS", 120_000));
+    }
+
+    /**
+     * How long other shards' nodes may take to start, and how far back a list's last load counts as this run's.
+     */
+    public Duration shardGrace() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_SHARD_GRACE_MS", 600_000));
+    }
+
+    /**
+     * Whether to keep running and refresh each list on its own schedule instead of loading all lists once.
+     */
+    public boolean daemon() {
+        return booleanOrDefault("BLOCKLIST_LOADER_DAEMON", false);
+    }
+
+    public Duration refreshMinInterval() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_REFRESH_MIN_INTERVAL_MS", 900_000));
+    }
+
+    public Duration refreshMaxInterval() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_REFRESH_MAX_INTERVAL_MS", 86_400_000));
+    }
+
+    /**
+     * How often the daemon fetches the list catalog to pick up added and removed lists.
+     */
+    public Duration catalogRefreshInterval() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_CATALOG_REFRESH_MS", 3_600_000));
+    }
+
+    /**
+     * How long a stopping daemon waits for its running refreshes to finish.
+     */
+    public Duration shutdownTimeout() {
+        return Duration.ofMillis(intOrDefault("BLOCKLIST_LOADER_SHUTDOWN_TIMEOUT_MS", 300_000));
+    }
+
+    private HttpClientSettings httpClientSettings(String name, String prefix, int connectTimeoutMillis,
+                                                  int requestTimeoutMillis, int transferTimeoutMillis) {
+        return new HttpClientSettings(name,
+                httpVersionOrDefault(prefix + "HTTP_VERSION", HttpClient.Version.HTTP_2),
+                Duration.ofMillis(intOrDefault(prefix + "CONNECT_TIMEOUT_MS", connectTimeoutMillis)),
+                Duration.ofMillis(intOrDefault(prefix + "REQUEST_TIMEOUT_MS", requestTimeoutMillis)),
+                Duration.ofMillis(intOrDefault(prefix + "TRANSFER_TIMEOUT_MS", transferTimeoutMillis)),
+                intOrDefault(prefix + "MAX_CONCURRENT_REQUESTS", 0));
+    }
+
+    private HttpClient.Version httpVersionOrDefault(String name, HttpClient.Version defaultValue) {
+        var value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return HttpClient.Version.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid " + name + " environment variable, expected HTTP_1_1 or HTTP_2: " + value, e);
+        }
+    }
+
+    private Optional<Path> pathOrEmpty(String name) {
+        var value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(value.trim()));
+    }
+
+    private int intOrDefault(String name, int defaultValue) {
+        var value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid " + name + " environment variable: " + value, e);
+        }
+    }
+
+    private boolean booleanOrDefault(String name, boolean defaultValue) {
+        var value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
     private String assertNotNullOrEmpty(String value, String exceptionMessage) {
         if (value == null || value.isEmpty() || value.isBlank()) {
             throw new RuntimeException(exceptionMessage);
@@ -0,0 +1,92 @@
+package com.developerdan.blocklist.loader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip transport compression for API requests and responses. The JDK HTTP client neither advertises nor decodes
+ * content encodings, so requests that want compressed responses send {@link #ACCEPT_ENCODING} and response bodies
+ * are decoded here, as a stream, according to their {@code Content-Encoding}. Responses without one are read as is.
+ */
+public final class ContentEncoding {
+    public static final String ACCEPT_ENCODING = "gzip";
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Wraps a response body in a decoder for the response's content encoding.
+     */
+    public static InputStream decode(HttpHeaders headers, InputStream body) throws IOException {
+        var encoding = headers.firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "identity":
+            case "":
+                return body;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, BUFFER_BYTES);
+            default:
+                body.close();
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+
+    /**
+     * Body handler for a plain text response read one line at a time. Like the handlers of
+     * {@link JsonBodyHandler} the body is handed out as a {@link Supplier}, so decoding starts on the caller's
+     * thread; error responses are discarded. The returned stream must be closed.
+     */
+    public static HttpResponse.BodyHandler<Supplier<Stream<String>>> ofLines() {
+        return responseInfo -> {
+            if (responseInfo.statusCode() >= 300) {
+                return HttpResponse.BodySubscribers.replacing(Stream::empty);
+            }
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> () -> lines(responseInfo.headers(), body));
+        };
+    }
+
+    private static Stream<String> lines(HttpHeaders headers, InputStream body) {
+        try {
+            var reader = new BufferedReader(new InputStreamReader(decode(headers, body), StandardCharsets.UTF_8), BUFFER_BYTES);
+            return reader.lines().onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gzip compressed request body. The caller sets {@code Content-Encoding: gzip} on the request.
+     */
+    public static HttpRequest.BodyPublisher gzip(String body) {
+        var compressed = new ByteArrayOutputStream(Math.max(64, body.length() / 4));
+        try (var output = new GZIPOutputStream(compressed, BUFFER_BYTES)) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HttpRequest.BodyPublishers.ofByteArray(compressed.toByteArray());
+    }
+}
@@ -0,0 +1,114 @@
+package com.developerdan.blocklist.loader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Process-wide dictionary that gives every distinct domain a compact int id, so the entries of many overlapping
+ * lists can be held and diffed as sorted int arrays (see {@link DomainIdSet}). Domains are interned by their
+ * {@link DomainStore} key bytes: the bytes of all keys live in one append-only arena and an open-addressing table
+ * maps them to ids, about 30 bytes per distinct domain in total. Ids are assigned in first-seen order and are
+ * never reused; the dictionary only grows, so a long running loader replaces it with an empty one once it holds
+ * too many domains. Diffs already running keep using the dictionary they started with.
+ * <p>
+ * All methods are synchronized; interning is a hash lookup, so contention between lists stays short.
+ */
+public final class DomainDictionary {
+    private static final int MAX_ARENA_BYTES = Integer.MAX_VALUE - 8;
+    private byte[] arena = new byte[1 << 16];
+    private int arenaLength;
+    private int[] offsets = new int[1 << 12];
+    private int size;
+    private int[] table = new int[1 << 13];
+
+    /**
+     * Id of the domain, assigning a new one if the domain was not seen before.
+     */
+    public int intern(String domain) {
+        var key = DomainStore.reverseLabels(domain).getBytes(StandardCharsets.UTF_8);
+        return intern(key, key.length);
+    }
+
+    /**
+     * Id of the {@link DomainStore} key held in the first {@code length} bytes of {@code key}.
+     */
+    synchronized int intern(byte[] key, int length) {
+        var mask = table.length - 1;
+        for (var slot = hash(key, 0, length) & mask; ; slot = (slot + 1) & mask) {
+            var entry = table[slot];
+            if (entry == 0) {
+                var id = append(key, length);
+                table[slot] = id + 1;
+                if (size * 2 > table.length) {
+                    resizeTable();
+                }
+                return id;
+            }
+            var id = entry - 1;
+            if (Arrays.equals(arena, offsets[id], offsets[id + 1], key, 0, length)) {
+                return id;
+            }
+        }
+    }
+
+    public synchronized String domain(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown domain id: " + id);
+        }
+        var key = new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+        return DomainStore.reverseLabels(key);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap used by the dictionary.
+     */
+    public synchronized long sizeInBytes() {
+        return arena.length + (long) (offsets.length + table.length) * Integer.BYTES;
+    }
+
+    private int append(byte[] key, int length) {
+        if (arenaLength + (long) length > MAX_ARENA_BYTES) {
+            throw new IllegalStateException("Domain dictionary is full: " + size + " domains in " + arenaLength + " bytes");
+        }
+        if (arenaLength + length > arena.length) {
+            arena = Arrays.copyOf(arena, (int) Math.min(MAX_ARENA_BYTES, Math.max(arenaLength + (long) length, arena.length * 2L)));
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(key, 0, arena, arenaLength, length);
+        arenaLength += length;
+        offsets[size + 1] = arenaLength;
+        return size++;
+    }
+
+    private void resizeTable() {
+        var resized = new int[table.length * 2];
+        var mask = resized.length - 1;
+        for (var id = 0; id < size; id++) {
+            var slot = hash(arena, offsets[id], offsets[id + 1]) & mask;
+            while (resized[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            resized[slot] = id + 1;
+        }
+        table = resized;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        var hash = 1;
+        for (var i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        // murmur3 finalizer, so similar keys do not cluster in the low bits that pick a slot
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,66 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.Arrays;
+
+/**
+ * The entries of one list version as a sorted array of {@link DomainDictionary} ids: 4 bytes per entry, and a
+ * diff against another set of the same dictionary is a merge over ints. Ids follow first-seen order, not domain
+ * order, so a diff reports added and removed domains in no particular order.
+ */
+public final class DomainIdSet {
+    private final DomainDictionary dictionary;
+    private final int[] ids;
+
+    private DomainIdSet(DomainDictionary dictionary, int[] ids) {
+        this.dictionary = dictionary;
+        this.ids = ids;
+    }
+
+    public static DomainIdSet of(DomainStore entries, DomainDictionary dictionary) {
+        var ids = entries.ids(dictionary);
+        Arrays.sort(ids);
+        return new DomainIdSet(dictionary, ids);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long sizeInBytes() {
+        return (long) ids.length * Integer.BYTES + 16;
+    }
+
+    /**
+     * Diffs two sets in one merge pass. Only added and removed entries are turned back into domains; unchanged
+     * entries are reported to {@link SortedDiff.Sink#unchangedCount} once, at the end.
+     */
+    public static void diff(DomainIdSet previous, DomainIdSet current, SortedDiff.Sink<String> sink) {
+        if (previous.dictionary != current.dictionary) {
+            throw new IllegalArgumentException("Sets of different dictionaries can not be diffed");
+        }
+        var dictionary = current.dictionary;
+        var previousIds = previous.ids;
+        var currentIds = current.ids;
+        var p = 0;
+        var c = 0;
+        var unchanged = 0L;
+        while (p < previousIds.length && c < currentIds.length) {
+            if (previousIds[p] == currentIds[c]) {
+                unchanged++;
+                p++;
+                c++;
+            } else if (previousIds[p] < currentIds[c]) {
+                sink.removed(dictionary.domain(previousIds[p++]));
+            } else {
+                sink.added(dictionary.domain(currentIds[c++]));
+            }
+        }
+        while (p < previousIds.length) {
+            sink.removed(dictionary.domain(previousIds[p++]));
+        }
+        while (c < currentIds.length) {
+            sink.added(dictionary.domain(currentIds[c++]));
+        }
+        sink.unchangedCount(unchanged);
+    }
+}
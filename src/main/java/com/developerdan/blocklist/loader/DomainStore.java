@@ -0,0 +1,524 @@
+package com.developerdan.blocklist.loader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Compact, immutable, sorted set of domains.
+ * <p>
+ * Entries are front coded: each entry stores the length of the prefix it shares with the entry before it and
+ * the remaining UTF-8 bytes. Every {@value #BLOCK_SIZE}th entry is stored in full and its offset is kept in an
+ * {@code int[]}, which allows binary search. Domains in a list share long suffixes rather than prefixes, so
+ * entries are sorted and coded on their labels reversed ({@code ads.example.com} is stored as
+ * {@code com.example.ads}); iteration order is therefore the order of {@link #COMPARATOR}. The bytes live in a
+ * {@link ByteBuffer}, which can be a heap, direct or memory-mapped buffer.
+ */
+public final class DomainStore implements Iterable<String> {
+    public static final int BLOCK_SIZE = 16;
+    public static final Comparator<String> COMPARATOR = DomainStore::compareReversed;
+    public static final DomainStore EMPTY = new Builder().build();
+    private final ByteBuffer data;
+    private final int[] blockOffsets;
+    private final int size;
+
+    DomainStore(ByteBuffer data, int[] blockOffsets, int size) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.size = size;
+    }
+
+    /**
+     * Builds a store from domains in any order. Input that is already in {@link #COMPARATOR} order is encoded
+     * as it streams in; otherwise the entries are collected and sorted first. Duplicates are dropped.
+     */
+    public static DomainStore copyOf(Iterator<String> domains) {
+        var builder = new Builder();
+        while (domains.hasNext()) {
+            var key = reverseLabels(domains.next());
+            var comparison = builder.compareToLastKey(key);
+            if (comparison > 0) {
+                builder.addKey(key);
+            } else if (comparison < 0) {
+                return sorted(builder.build(), key, domains);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a store from a collection in any order, such as the records of a parsed list. The keys go straight
+     * into one array of the collection's size and are sorted there, without an intermediate list.
+     */
+    public static <T> DomainStore copyOf(Collection<T> domains, Function<? super T, String> toDomain) {
+        var keys = new String[domains.size()];
+        var size = 0;
+        for (var domain : domains) {
+            keys[size++] = reverseLabels(toDomain.apply(domain));
+        }
+        return ofUnsortedKeys(size == keys.length ? keys : Arrays.copyOf(keys, size));
+    }
+
+    private static DomainStore sorted(DomainStore head, String nextKey, Iterator<String> rest) {
+        var keys = new ArrayList<String>(head.size() * 2 + 16);
+        head.keyIterator().forEachRemaining(keys::add);
+        keys.add(nextKey);
+        rest.forEachRemaining(domain -> keys.add(reverseLabels(domain)));
+        var unsortedKeys = keys.toArray(new String[0]);
+        keys.clear();
+        return ofUnsortedKeys(unsortedKeys);
+    }
+
+    private static DomainStore ofUnsortedKeys(String[] keys) {
+        Arrays.parallelSort(keys);
+        var builder = new Builder();
+        String last = null;
+        for (var key : keys) {
+            if (!key.equals(last)) {
+                builder.addKey(key);
+                last = key;
+            }
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Approximate number of bytes used by this store, on and off heap.
+     */
+    public long sizeInBytes() {
+        return data.capacity() + (long) blockOffsets.length * Integer.BYTES + 64;
+    }
+
+    public boolean contains(String domain) {
+        var key = reverseLabels(domain);
+        var low = 0;
+        var high = blockOffsets.length - 1;
+        var block = -1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var comparison = firstKeyOfBlock(middle).compareTo(key);
+            if (comparison == 0) {
+                return true;
+            }
+            if (comparison < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) {
+            return false;
+        }
+        var cursor = new Cursor(block);
+        for (var i = 0; i < BLOCK_SIZE && cursor.hasNext(); i++) {
+            var comparison = cursor.nextKey().compareTo(key);
+            if (comparison >= 0) {
+                return comparison == 0;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        var keys = keyIterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return reverseLabels(keys.next());
+            }
+        };
+    }
+
+    /**
+     * Diffs two stores in one merge pass over their encoded keys.
+     */
+    public static void diff(DomainStore previous, DomainStore current, SortedDiff.Sink<String> sink) {
+        SortedDiff.diff(previous.keyIterator(), current.keyIterator(), Comparator.naturalOrder(), new SortedDiff.Sink<String>() {
+            @Override
+            public void added(String key) {
+                sink.added(reverseLabels(key));
+            }
+
+            @Override
+            public void removed(String key) {
+                sink.removed(reverseLabels(key));
+            }
+
+            @Override
+            public void unchanged(String key) {
+                sink.unchanged(reverseLabels(key));
+            }
+        });
+    }
+
+    /**
+     * A store with the entries of this one, plus {@code added} and minus {@code removed}, built in one merge pass.
+     */
+    public DomainStore patch(DomainStore added, DomainStore removed) {
+        var builder = new Builder();
+        var keys = keyIterator();
+        var addedKeys = added.keyIterator();
+        var removedKeys = removed.keyIterator();
+        var key = nextOrNull(keys);
+        var addedKey = nextOrNull(addedKeys);
+        var removedKey = nextOrNull(removedKeys);
+        while (key != null || addedKey != null) {
+            String next;
+            if (addedKey == null || (key != null && key.compareTo(addedKey) < 0)) {
+                next = key;
+                key = nextOrNull(keys);
+            } else {
+                if (addedKey.equals(key)) {
+                    key = nextOrNull(keys);
+                }
+                next = addedKey;
+                addedKey = nextOrNull(addedKeys);
+            }
+            while (removedKey != null && removedKey.compareTo(next) < 0) {
+                removedKey = nextOrNull(removedKeys);
+            }
+            if (!next.equals(removedKey)) {
+                builder.addKey(next);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String nextOrNull(Iterator<String> keys) {
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    Iterator<String> keyIterator() {
+        var cursor = new Cursor(0);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return cursor.nextKey();
+            }
+        };
+    }
+
+    /**
+     * Dictionary ids of the entries, in store order, interned straight from the encoded keys.
+     */
+    int[] ids(DomainDictionary dictionary) {
+        var ids = new int[size];
+        var cursor = new Cursor(0);
+        // each lookup takes the dictionary's lock on its own, so lists interned at the same time interleave
+        for (var i = 0; i < size; i++) {
+            cursor.advance();
+            ids[i] = dictionary.intern(cursor.key, cursor.keyLength);
+        }
+        return ids;
+    }
+
+    ByteBuffer data() {
+        return data.duplicate();
+    }
+
+    int[] blockOffsets() {
+        return blockOffsets;
+    }
+
+    private String firstKeyOfBlock(int block) {
+        return new Cursor(block).nextKey();
+    }
+
+    /**
+     * Compares two domains as {@code reverseLabels(left).compareTo(reverseLabels(right))} does, walking their labels
+     * from the last one without building the reversed strings.
+     */
+    static int compareReversed(String left, String right) {
+        var leftEnd = left.length();
+        var leftStart = left.lastIndexOf('.', leftEnd - 1) + 1;
+        var leftPosition = leftStart;
+        var rightEnd = right.length();
+        var rightStart = right.lastIndexOf('.', rightEnd - 1) + 1;
+        var rightPosition = rightStart;
+        while (true) {
+            int leftChar;
+            if (leftPosition < leftEnd) {
+                leftChar = left.charAt(leftPosition++);
+            } else if (leftStart > 0) {
+                leftChar = '.';
+                leftEnd = leftStart - 1;
+                leftStart = left.lastIndexOf('.', leftEnd - 1) + 1;
+                leftPosition = leftStart;
+            } else {
+                leftChar = -1;
+            }
+            int rightChar;
+            if (rightPosition < rightEnd) {
+                rightChar = right.charAt(rightPosition++);
+            } else if (rightStart > 0) {
+                rightChar = '.';
+                rightEnd = rightStart - 1;
+                rightStart = right.lastIndexOf('.', rightEnd - 1) + 1;
+                rightPosition = rightStart;
+            } else {
+                rightChar = -1;
+            }
+            if (leftChar != rightChar || leftChar < 0) {
+                return leftChar - rightChar;
+            }
+        }
+    }
+
+    /**
+     * Reverses the order of the labels of a domain. The operation is its own inverse.
+     */
+    static String reverseLabels(String domain) {
+        var end = domain.length();
+        var reversed = new StringBuilder(end);
+        for (var i = end - 1; i >= 0; i--) {
+            if (domain.charAt(i) == '.') {
+                reversed.append(domain, i + 1, end).append('.');
+                end = i;
+            }
+        }
+        return reversed.append(domain, 0, end).toString();
+    }
+
+    private final class Cursor {
+        private final ByteBuffer buffer;
+        private int index;
+        private byte[] key = new byte[256];
+        private int keyLength;
+
+        private Cursor(int block) {
+            this.buffer = data.duplicate();
+            this.index = block * BLOCK_SIZE;
+            if (block < blockOffsets.length) {
+                buffer.position(blockOffsets[block]);
+            }
+        }
+
+        private boolean hasNext() {
+            return index < size;
+        }
+
+        private String nextKey() {
+            advance();
+            return new String(key, 0, keyLength, StandardCharsets.UTF_8);
+        }
+
+        private void advance() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var prefixLength = readVarInt(buffer);
+            var suffixLength = readVarInt(buffer);
+            keyLength = prefixLength + suffixLength;
+            if (keyLength > key.length) {
+                key = Arrays.copyOf(key, Math.max(keyLength, key.length * 2));
+            }
+            buffer.get(key, prefixLength, suffixLength);
+            index++;
+        }
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        var value = 0;
+        var shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Encodes domains that are added in strictly ascending {@link #COMPARATOR} order.
+     * A builder created with {@link #spillingTo(Path)} writes the encoded bytes to a file as it goes and
+     * {@link #build() builds} a store over a memory-mapped view of it, so only the block offsets stay on the heap.
+     */
+    public static final class Builder {
+        private static final int SPILL_BYTES = 1 << 20;
+        private byte[] bytes = new byte[4096];
+        private int length;
+        private int[] blockOffsets = new int[16];
+        private int size;
+        private byte[] lastKey = new byte[0];
+        private String lastKeyString;
+        private final Path file;
+        private final FileChannel channel;
+        private long spilled;
+
+        public Builder() {
+            this.file = null;
+            this.channel = null;
+        }
+
+        private Builder(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * A builder that keeps the encoded entries in the given file rather than on the heap.
+         * The file is deleted once the store is built; the mapping stays valid until the store is garbage collected.
+         */
+        public static Builder spillingTo(Path file) {
+            try {
+                return new Builder(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public Builder add(String domain) {
+            return addKey(reverseLabels(domain));
+        }
+
+        int compareToLastKey(String key) {
+            return lastKeyString == null ? 1 : key.compareTo(lastKeyString);
+        }
+
+        Builder addKey(String key) {
+            if (lastKeyString != null && key.compareTo(lastKeyString) <= 0) {
+                throw new IllegalArgumentException("Domains must be added in ascending order: <"
+                        + reverseLabels(lastKeyString) + "> before <" + reverseLabels(key) + ">");
+            }
+            var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            var prefixLength = 0;
+            if (size % BLOCK_SIZE == 0) {
+                var block = size / BLOCK_SIZE;
+                if (block == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                }
+                blockOffsets[block] = offset();
+            } else {
+                prefixLength = Arrays.mismatch(lastKey, keyBytes);
+                if (prefixLength < 0) {
+                    prefixLength = keyBytes.length;
+                }
+            }
+            var suffixLength = keyBytes.length - prefixLength;
+            ensureCapacity(10 + suffixLength);
+            writeVarInt(prefixLength);
+            writeVarInt(suffixLength);
+            System.arraycopy(keyBytes, prefixLength, bytes, length, suffixLength);
+            length += suffixLength;
+            lastKey = keyBytes;
+            lastKeyString = key;
+            size++;
+            if (channel != null && length >= SPILL_BYTES) {
+                spill();
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public DomainStore build() {
+            var blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            if (channel == null) {
+                return new DomainStore(ByteBuffer.wrap(Arrays.copyOf(bytes, length)), Arrays.copyOf(blockOffsets, blocks), size);
+            }
+            try (channel) {
+                spill();
+                var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, spilled);
+                return new DomainStore(data, Arrays.copyOf(blockOffsets, blocks), size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deleteQuietly(file);
+            }
+        }
+
+        /**
+         * Discards a spilling builder's file without building a store.
+         */
+        public void discard() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the file is removed below either way
+            }
+            deleteQuietly(file);
+        }
+
+        private int offset() {
+            var offset = spilled + length;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Domain store exceeds " + Integer.MAX_VALUE + " bytes");
+            }
+            return (int) offset;
+        }
+
+        private void spill() {
+            try {
+                var buffer = ByteBuffer.wrap(bytes, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                spilled += length;
+                length = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void deleteQuietly(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (length + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + additional, bytes.length + (bytes.length >> 1)));
+            }
+        }
+    }
+}
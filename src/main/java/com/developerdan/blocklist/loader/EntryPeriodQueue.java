@@ -0,0 +1,564 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Durable outbound queue of entry period operations. The diff of a pending version is appended to a segment,
+ * one file per blocklist, while an uploader drains it in batches, so computing the diff does not wait for the API.
+ * <p>
+ * A segment starts with a header page: magic, sealed flag, end of the appended records, end of the acknowledged
+ * records, and the {@link UploadJournal} header of the pending version. Records follow, each an operation byte
+ * ({@code +} starts a period, {@code -} ends one), a two byte length and the UTF-8 domain. The file is memory-mapped
+ * in chunks and a record never spans two chunks; a zero operation byte marks the unused rest of a chunk. Appends
+ * and acknowledgements are written to the mapped pages, so they outlive a crash of the loader; the segment is forced
+ * to disk when it is sealed and once every record is acknowledged.
+ * <p>
+ * The acknowledged end only advances over records the API confirmed without a gap before them, so batches confirmed
+ * out of order are sent again after a crash: delivery is at least once. Chunks behind the acknowledged end are
+ * unmapped, and appending waits while more than the queue's limit of bytes is unacknowledged, so a diff that runs
+ * ahead of the API holds a bounded share of the segment mapped.
+ */
+public class EntryPeriodQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntryPeriodQueue.class);
+    private static final int MAGIC = 0x424C5131;
+    private static final int SEALED_OFFSET = 4;
+    private static final int APPENDED_OFFSET = 8;
+    private static final int ACKNOWLEDGED_OFFSET = 16;
+    private static final int VERSION_HEADER_OFFSET = 24;
+    private static final int HEADER_BYTES = 4096;
+    private static final int CHUNK_BYTES = 8 << 20;
+    private static final int RECORD_HEADER_BYTES = 3;
+    private static final int MAX_DOMAIN_BYTES = 0xFFFF;
+    private static final long LINGER_MILLIS = 50;
+    private static final MethodHandle UNMAPPER = unmapper();
+    private final Path directory;
+    private final long maxPendingBytes;
+
+    public EntryPeriodQueue(Path directory) {
+        this(directory, 0);
+    }
+
+    /**
+     * @param maxPendingBytes how many bytes of operations may be appended but not acknowledged; 0 for no limit
+     */
+    public EntryPeriodQueue(Path directory, long maxPendingBytes) {
+        this.directory = directory;
+        this.maxPendingBytes = maxPendingBytes <= 0 ? Long.MAX_VALUE : maxPendingBytes;
+    }
+
+    public static EntryPeriodQueue disabled() {
+        return new EntryPeriodQueue(null);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Id of the version the blocklist's segment holds operations of, without reading the records.
+     */
+    public Optional<UUID> pendingVersionId(UUID blocklistId) {
+        if (!isEnabled() || !Files.isRegularFile(segmentFile(blocklistId))) {
+            return Optional.empty();
+        }
+        try (var segment = Segment.open(segmentFile(blocklistId), Long.MAX_VALUE)) {
+            return segment.versionHeader().stream()
+                    .findFirst()
+                    .filter(line -> line.startsWith("version="))
+                    .map(line -> UUID.fromString(line.substring("version=".length())));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read entry period queue of blocklist {}: {}", blocklistId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The pending version of the blocklist's segment, with the operations the API acknowledged as confirmed.
+     */
+    public Optional<UploadJournal.Checkpoint> read(UUID blocklistId) {
+        if (!isEnabled() || !Files.isRegularFile(segmentFile(blocklistId))) {
+            return Optional.empty();
+        }
+        var file = segmentFile(blocklistId);
+        try (var segment = Segment.open(file, Long.MAX_VALUE)) {
+            var lines = segment.versionHeader();
+            if (lines.size() < UploadJournal.HEADER_LINES) {
+                LOGGER.warn("Ignoring entry period queue {} without a version header", file);
+                return Optional.empty();
+            }
+            var added = new ArrayList<String>();
+            var removed = new ArrayList<String>();
+            for (var position = (long) HEADER_BYTES; position < segment.acknowledged; ) {
+                var batch = segment.read(position, segment.acknowledged, Integer.MAX_VALUE);
+                added.addAll(batch.getStarted());
+                removed.addAll(batch.getEnded());
+                position = batch.getTo();
+            }
+            return Optional.of(UploadJournal.checkpoint(blocklistId, lines, DomainStore.copyOf(added.iterator()), DomainStore.copyOf(removed.iterator())));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read entry period queue {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Starts a new segment for a version that was just created, replacing any previous segment of the blocklist.
+     */
+    public Segment start(Version pending, Version previousVersion) {
+        var file = segmentFile(pending.getBlocklistId());
+        try {
+            Files.createDirectories(directory);
+            var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            var segment = new Segment(file, channel, maxPendingBytes);
+            var versionHeader = UploadJournal.header(pending, previousVersion).getBytes(StandardCharsets.UTF_8);
+            if (VERSION_HEADER_OFFSET + Integer.BYTES + versionHeader.length > HEADER_BYTES) {
+                segment.close();
+                throw new IllegalArgumentException("Version header of " + pending.getId() + " does not fit in a segment header");
+            }
+            segment.header.putInt(VERSION_HEADER_OFFSET, versionHeader.length);
+            segment.header.put(VERSION_HEADER_OFFSET + Integer.BYTES, versionHeader);
+            segment.header.putLong(APPENDED_OFFSET, HEADER_BYTES);
+            segment.header.putLong(ACKNOWLEDGED_OFFSET, HEADER_BYTES);
+            segment.header.putInt(0, MAGIC);
+            segment.header.force();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start entry period queue " + file, e);
+        }
+    }
+
+    /**
+     * Reopens the segment a checkpoint was read from. Operations past the acknowledged ones are dropped; they are
+     * appended again by diffing the same entries.
+     */
+    public Segment resume(UploadJournal.Checkpoint checkpoint) {
+        var file = segmentFile(checkpoint.getVersion().getBlocklistId());
+        try {
+            var segment = Segment.open(file, maxPendingBytes);
+            segment.appended = segment.acknowledged;
+            segment.sealed = false;
+            segment.header.putLong(APPENDED_OFFSET, segment.appended);
+            segment.header.putInt(SEALED_OFFSET, 0);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to reopen entry period queue " + file, e);
+        }
+    }
+
+    public void delete(UUID blocklistId) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segmentFile(blocklistId));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete entry period queue of blocklist {}: {}", blocklistId, e.getMessage());
+        }
+    }
+
+    private Path segmentFile(UUID blocklistId) {
+        return directory.resolve(blocklistId + ".queue");
+    }
+
+    /**
+     * {@code Unsafe.invokeCleaner}, which unmaps a buffer right away, or null where it is not available and the
+     * garbage collector unmaps buffers once they are unreachable.
+     */
+    private static MethodHandle unmapper() {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Entry period queue chunks are unmapped by the garbage collector: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER == null) {
+            return;
+        }
+        try {
+            UNMAPPER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            LOGGER.debug("Unable to unmap an entry period queue chunk: {}", e.toString());
+        }
+    }
+
+    /**
+     * The operations of one pending version. A single thread appends, another drains with {@link #next} and
+     * acknowledges what the API confirmed. Draining, acknowledging and mapping chunks share a lock rather than a
+     * monitor, so a virtual thread waiting for records or forcing the header does not pin its carrier. The appending
+     * thread closes the segment once draining has ended; closing unmaps it.
+     */
+    public static final class Segment implements Closeable {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final List<MappedByteBuffer> chunks = new CopyOnWriteArrayList<>();
+        private final TreeMap<Long, Long> confirmed = new TreeMap<>();
+        private final long maxPendingBytes;
+        private volatile long appended = HEADER_BYTES;
+        private volatile boolean sealed;
+        private volatile boolean closed;
+        private volatile boolean abandoned;
+        private volatile long acknowledged = HEADER_BYTES;
+        private int released;
+
+        private Segment(Path file, FileChannel channel, long maxPendingBytes) throws IOException {
+            this.file = file;
+            this.channel = channel;
+            this.maxPendingBytes = maxPendingBytes;
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        }
+
+        private static Segment open(Path file, long maxPendingBytes) throws IOException {
+            var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IOException("Truncated entry period queue " + file);
+                }
+                var segment = new Segment(file, channel, maxPendingBytes);
+                if (segment.header.getInt(0) != MAGIC) {
+                    throw new IOException("Not an entry period queue: " + file);
+                }
+                segment.sealed = segment.header.getInt(SEALED_OFFSET) != 0;
+                segment.appended = segment.header.getLong(APPENDED_OFFSET);
+                segment.acknowledged = segment.header.getLong(ACKNOWLEDGED_OFFSET);
+                if (segment.acknowledged < HEADER_BYTES || segment.appended < segment.acknowledged || segment.appended > channel.size()) {
+                    throw new IOException("Corrupt offsets in entry period queue " + file);
+                }
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Appends an operation: {@code +} to start the domain's period, {@code -} to end it. Waits while the
+         * segment holds more unacknowledged bytes than its limit.
+         *
+         * @throws IllegalStateException if the segment is no longer drained
+         */
+        public void append(char operation, String domain) throws InterruptedException {
+            var bytes = domain.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_DOMAIN_BYTES) {
+                throw new IllegalArgumentException("Domain of " + bytes.length + " bytes does not fit in a queue record");
+            }
+            if (appended - acknowledged > maxPendingBytes) {
+                awaitCapacity();
+            }
+            var position = appended;
+            var chunkOffset = (int) ((position - HEADER_BYTES) % CHUNK_BYTES);
+            if (chunkOffset + RECORD_HEADER_BYTES + bytes.length > CHUNK_BYTES) {
+                chunk(position).put(chunkOffset, (byte) 0);
+                position += CHUNK_BYTES - chunkOffset;
+                chunkOffset = 0;
+            }
+            var chunk = chunk(position);
+            chunk.put(chunkOffset + 1, (byte) (bytes.length >>> 8));
+            chunk.put(chunkOffset + 2, (byte) bytes.length);
+            chunk.put(chunkOffset + RECORD_HEADER_BYTES, bytes);
+            chunk.put(chunkOffset, (byte) operation);
+            appended = position + RECORD_HEADER_BYTES + bytes.length;
+            header.putLong(APPENDED_OFFSET, appended);
+        }
+
+        private void awaitCapacity() throws InterruptedException {
+            lock.lock();
+            try {
+                while (appended - acknowledged > maxPendingBytes) {
+                    if (closed || abandoned) {
+                        throw new IllegalStateException("Entry period queue " + file + " is no longer drained");
+                    }
+                    changed.await(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Marks the segment complete: nothing is appended after this, and draining ends at its last record.
+         */
+        public void seal() {
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Entry period queue " + file + " is closed");
+                }
+                for (var chunk : chunks) {
+                    if (chunk != null) {
+                        chunk.force();
+                    }
+                }
+                header.putInt(SEALED_OFFSET, 1);
+                header.force();
+                sealed = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Stops draining early, for example after a request failed: {@link #next} returns null and the appending
+         * thread no longer waits for acknowledgements.
+         */
+        public void abandon() {
+            lock.lock();
+            try {
+                abandoned = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * The next batch of operations starting at {@code from}, ending before either kind of operation exceeds
+         * {@code maxRecords}. Waits briefly for a batch to fill while the segment is still being appended to.
+         * Returns null once a sealed segment is drained or the segment is closed or abandoned.
+         */
+        public Batch next(long from, int maxRecords) throws InterruptedException {
+            lock.lock();
+            try {
+                return awaitBatch(from, maxRecords);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Batch awaitBatch(long from, int maxRecords) throws InterruptedException {
+            var lingerUntil = 0L;
+            while (!closed && !abandoned) {
+                var complete = sealed;
+                var end = appended;
+                if (from < end) {
+                    var batch = read(from, end, maxRecords);
+                    if (complete || batch.getTo() < end) {
+                        return batch;
+                    }
+                    if (lingerUntil == 0) {
+                        lingerUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+                    } else if (System.nanoTime() >= lingerUntil) {
+                        return batch;
+                    }
+                } else if (complete) {
+                    return null;
+                }
+                changed.await(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+
+        /**
+         * Records that the API confirmed the operations of a batch.
+         */
+        public void acknowledge(Batch batch) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                confirmed.put(batch.getFrom(), batch.getTo());
+                var end = confirmed.remove(acknowledged);
+                while (end != null) {
+                    acknowledged = end;
+                    end = confirmed.remove(acknowledged);
+                }
+                header.putLong(ACKNOWLEDGED_OFFSET, acknowledged);
+                if (sealed && acknowledged == appended) {
+                    header.force();
+                }
+                releaseChunksBefore(acknowledged);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * End of the acknowledged operations, where draining a resumed segment starts.
+         */
+        public long getAcknowledged() {
+            lock.lock();
+            try {
+                return acknowledged;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public boolean isAcknowledged() {
+            lock.lock();
+            try {
+                return sealed && acknowledged == appended;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                changed.signalAll();
+                for (var chunk : chunks) {
+                    if (chunk != null) {
+                        unmap(chunk);
+                    }
+                }
+                chunks.clear();
+                unmap(header);
+            } finally {
+                lock.unlock();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close entry period queue {}: {}", file, e.getMessage());
+            }
+        }
+
+        private List<String> versionHeader() {
+            var length = header.getInt(VERSION_HEADER_OFFSET);
+            if (length < 0 || VERSION_HEADER_OFFSET + Integer.BYTES + length > HEADER_BYTES) {
+                throw new IllegalStateException("Corrupt version header in entry period queue " + file);
+            }
+            var bytes = new byte[length];
+            header.get(VERSION_HEADER_OFFSET + Integer.BYTES, bytes);
+            return List.of(new String(bytes, StandardCharsets.UTF_8).split("\n"));
+        }
+
+        private Batch read(long from, long end, int maxRecords) {
+            var started = new ArrayList<String>();
+            var ended = new ArrayList<String>();
+            var position = from;
+            while (position < end && started.size() < maxRecords && ended.size() < maxRecords) {
+                var chunkOffset = (int) ((position - HEADER_BYTES) % CHUNK_BYTES);
+                var chunk = chunk(position);
+                var operation = chunkOffset + RECORD_HEADER_BYTES > CHUNK_BYTES ? 0 : chunk.get(chunkOffset);
+                if (operation == 0) {
+                    position += CHUNK_BYTES - chunkOffset;
+                    continue;
+                }
+                var length = (chunk.get(chunkOffset + 1) & 0xFF) << 8 | chunk.get(chunkOffset + 2) & 0xFF;
+                var bytes = new byte[length];
+                chunk.get(chunkOffset + RECORD_HEADER_BYTES, bytes);
+                (operation == '+' ? started : ended).add(new String(bytes, StandardCharsets.UTF_8));
+                position += RECORD_HEADER_BYTES + length;
+            }
+            return new Batch(started, ended, from, position);
+        }
+
+        /**
+         * The mapped chunk holding a position. The appending and the draining thread both map chunks, so chunks
+         * are only added while holding the lock.
+         */
+        private MappedByteBuffer chunk(long position) {
+            var index = (int) ((position - HEADER_BYTES) / CHUNK_BYTES);
+            if (index < chunks.size()) {
+                return chunks.get(index);
+            }
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Entry period queue " + file + " is closed");
+                }
+                while (chunks.size() <= index) {
+                    chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) chunks.size() * CHUNK_BYTES, CHUNK_BYTES));
+                }
+                return chunks.get(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map entry period queue " + file, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Unmaps the chunks that end before {@code position}; no thread reads or writes there anymore.
+         */
+        private void releaseChunksBefore(long position) {
+            var end = (int) Math.min(chunks.size(), (position - HEADER_BYTES) / CHUNK_BYTES);
+            for (; released < end; released++) {
+                var chunk = chunks.set(released, null);
+                if (chunk != null) {
+                    unmap(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Consecutive records of a segment: the domains whose periods they start and those whose periods they end,
+     * sent as up to two requests and acknowledged together.
+     */
+    public static final class Batch {
+        private final List<String> started;
+        private final List<String> ended;
+        private final long from;
+        private final long to;
+
+        private Batch(List<String> started, List<String> ended, long from, long to) {
+            this.started = started;
+            this.ended = ended;
+            this.from = from;
+            this.to = to;
+        }
+
+        public List<String> getStarted() {
+            return started;
+        }
+
+        public List<String> getEnded() {
+            return ended;
+        }
+
+        long getFrom() {
+            return from;
+        }
+
+        long getTo() {
+            return to;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns diff events into entry period requests: added domains start a period on the new version,
+ * removed domains end their period on the previous version. Confirmed requests are recorded in an
+ * {@link UploadJournal}, and entries a resumed checkpoint already confirmed are not sent again.
+ * <p>
+ * With an {@link EntryPeriodQueue} segment the diff only appends to the segment, and a drain task sends its
+ * operations in order and acknowledges them as the API confirms them, so the diff does not wait for the API.
+ * <p>
+ * Once the API turns out not to support bulk requests, every domain is sent as a request of its own through the
+ * same request window; batches the API already rejected are sent that way before the uploader finishes.
+ */
+public class EntryPeriodUploader implements SortedDiff.Sink<String> {
+    private final BlocklistClient client;
+    private final RequestWindow.Tracker apiRequests;
+    private final Version previousVersion;
+    private final Version currentVersion;
+    private final int batchSize;
+    private final UploadJournal.Writer journal;
+    private final DomainStore confirmedAdded;
+    private final DomainStore confirmedRemoved;
+    private final EntryPeriodQueue.Segment segment;
+    private final CompletableFuture<Void> drain;
+    private final Queue<Unsent> unsent = new ConcurrentLinkedQueue<>();
+    private List<String> added = new ArrayList<>();
+    private List<String> removed = new ArrayList<>();
+    private long addedCount;
+    private long removedCount;
+    private long unchangedCount;
+    private long skippedCount;
+
+    public EntryPeriodUploader(BlocklistClient client, RequestWindow.Tracker apiRequests, Version previousVersion, Version currentVersion,
+                               int batchSize, UploadJournal.Writer journal, UploadJournal.Checkpoint checkpoint) {
+        this(client, apiRequests, previousVersion, currentVersion, batchSize, journal, checkpoint, null);
+    }
+
+    public EntryPeriodUploader(BlocklistClient client, RequestWindow.Tracker apiRequests, Version previousVersion, Version currentVersion,
+                               int batchSize, UploadJournal.Writer journal, UploadJournal.Checkpoint checkpoint, EntryPeriodQueue.Segment segment) {
+        this.client = client;
+        this.apiRequests = apiRequests;
+        this.previousVersion = previousVersion;
+        this.currentVersion = currentVersion;
+        this.batchSize = batchSize;
+        this.journal = journal;
+        this.confirmedAdded = checkpoint == null ? DomainStore.EMPTY : checkpoint.getConfirmedAdded();
+        this.confirmedRemoved = checkpoint == null ? DomainStore.EMPTY : checkpoint.getConfirmedRemoved();
+        this.segment = segment;
+        if (segment == null) {
+            this.drain = null;
+        } else {
+            var executor = LoaderExecutors.perTask("entry-period-queue");
+            this.drain = CompletableFuture.runAsync(this::drainQueue, executor);
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public void added(String entry) {
+        addedCount++;
+        if (confirmedAdded.contains(entry)) {
+            skippedCount++;
+            return;
+        }
+        if (segment != null) {
+            appendToQueue('+', entry);
+            return;
+        }
+        if (!client.isBulkEntryPeriodsSupported()) {
+            sendIndividually(true, List.of(entry), () -> { });
+            return;
+        }
+        added.add(entry);
+        if (added.size() >= batchSize) {
+            flushAdded();
+        }
+    }
+
+    @Override
+    public void removed(String entry) {
+        removedCount++;
+        if (confirmedRemoved.contains(entry)) {
+            skippedCount++;
+            return;
+        }
+        if (segment != null) {
+            appendToQueue('-', entry);
+            return;
+        }
+        if (!client.isBulkEntryPeriodsSupported()) {
+            sendIndividually(false, List.of(entry), () -> { });
+            return;
+        }
+        removed.add(entry);
+        if (removed.size() >= batchSize) {
+            flushRemoved();
+        }
+    }
+
+    @Override
+    public void unchanged(String entry) {
+        unchangedCount++;
+    }
+
+    @Override
+    public void unchangedCount(long count) {
+        unchangedCount += count;
+    }
+
+    /**
+     * Sends any partially filled batches and waits for every request to complete. With a queue segment, the
+     * segment is sealed and every operation in it has been acknowledged once this returns.
+     */
+    public void finish() {
+        if (segment != null) {
+            finishQueue();
+            return;
+        }
+        if (!added.isEmpty()) {
+            flushAdded();
+        }
+        if (!removed.isEmpty()) {
+            flushRemoved();
+        }
+        apiRequests.awaitCompletion();
+        resendUnsent();
+        apiRequests.awaitCompletion();
+    }
+
+    /**
+     * Waits for the requests already sent after the upload failed, so the journal or segment records their
+     * confirmations before it is closed. Failures of those requests are not reported again.
+     */
+    public void awaitSent() {
+        if (segment != null) {
+            // ends the drain once it has sent what was appended
+            segment.seal();
+            drain.exceptionally(e -> null).join();
+        }
+        apiRequests.awaitRequests();
+    }
+
+    public long getAddedCount() {
+        return addedCount;
+    }
+
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * Added and removed entries that were not sent because a resumed checkpoint had confirmed them.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    private void flushAdded() {
+        var batch = added;
+        added = new ArrayList<>();
+        send(true, batch, () -> { });
+    }
+
+    private void flushRemoved() {
+        var batch = removed;
+        removed = new ArrayList<>();
+        send(false, batch, () -> { });
+    }
+
+    /**
+     * Sends the domains as one bulk request, or as a request per domain if the API does not support bulk requests,
+     * and runs {@code whenConfirmed} once all of them are confirmed. A bulk request the API rejects as unsupported is
+     * kept for {@link #resendUnsent}, which sends it from an uploading thread rather than from the response callback.
+     */
+    private void send(boolean start, List<String> domains, Runnable whenConfirmed) {
+        if (!client.isBulkEntryPeriodsSupported()) {
+            sendIndividually(start, domains, whenConfirmed);
+            return;
+        }
+        apiRequests.submit(() -> bulk(start, domains).thenApply(sent -> {
+            if (sent) {
+                whenConfirmed.run();
+            } else {
+                unsent.add(new Unsent(start, domains, whenConfirmed));
+            }
+            return sent;
+        }));
+    }
+
+    /**
+     * Sends one request per domain, each waiting for its own permit of the request window.
+     */
+    private void sendIndividually(boolean start, List<String> domains, Runnable whenConfirmed) {
+        var unconfirmed = new AtomicInteger(domains.size());
+        for (var domain : domains) {
+            apiRequests.submit(() -> single(start, domain).thenApply(result -> {
+                if (unconfirmed.decrementAndGet() == 0) {
+                    whenConfirmed.run();
+                }
+                return result;
+            }));
+        }
+    }
+
+    private void resendUnsent() {
+        for (var batch = unsent.poll(); batch != null; batch = unsent.poll()) {
+            sendIndividually(batch.start, batch.domains, batch.whenConfirmed);
+        }
+    }
+
+    private CompletableFuture<Boolean> bulk(boolean start, List<String> domains) {
+        var request = start
+                ? client.startEntryPeriods(currentVersion, domains, confirmed -> journal(true, confirmed))
+                : client.endEntryPeriods(previousVersion, domains, confirmed -> journal(false, confirmed));
+        return abandonQueueOnFailure(request);
+    }
+
+    private CompletableFuture<Boolean> single(boolean start, String domain) {
+        var request = start ? client.startEntryPeriod(currentVersion, domain) : client.endEntryPeriod(previousVersion, domain);
+        return abandonQueueOnFailure(request.thenApply(result -> {
+            journal(start, List.of(domain));
+            return result;
+        }));
+    }
+
+    /**
+     * A failed request leaves a gap the segment is never acknowledged past, so draining ends and the diff no
+     * longer waits for it.
+     */
+    private CompletableFuture<Boolean> abandonQueueOnFailure(CompletableFuture<Boolean> request) {
+        if (segment == null) {
+            return request;
+        }
+        return request.whenComplete((result, error) -> {
+            if (error != null) {
+                segment.abandon();
+            }
+        });
+    }
+
+    /**
+     * Records confirmed domains in the journal; with a queue segment the acknowledgements record them instead.
+     */
+    private void journal(boolean start, List<String> domains) {
+        if (segment != null) {
+            return;
+        }
+        if (start) {
+            journal.started(domains);
+        } else {
+            journal.ended(domains);
+        }
+    }
+
+    /**
+     * Appends to the segment, which waits while too much of it is unacknowledged. If draining stopped meanwhile,
+     * the failure that stopped it is thrown.
+     */
+    private void appendToQueue(char operation, String entry) {
+        try {
+            segment.append(operation, entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while appending to the entry period queue of version " + currentVersion.getId(), e);
+        } catch (IllegalStateException e) {
+            joinDrain();
+            apiRequests.awaitCompletion();
+            throw e;
+        }
+    }
+
+    private void finishQueue() {
+        segment.seal();
+        joinDrain();
+        apiRequests.awaitCompletion();
+        resendUnsent();
+        apiRequests.awaitCompletion();
+        if (!segment.isAcknowledged()) {
+            throw new ApiException("Entry period queue of version " + currentVersion.getId() + " was drained but not fully acknowledged");
+        }
+    }
+
+    private void joinDrain() {
+        try {
+            drain.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Sends the segment's operations from the first one that was not acknowledged, until the sealed segment is
+     * drained. Requests go through the request window like direct uploads; a batch is acknowledged once both its
+     * started and its ended periods are confirmed.
+     */
+    private void drainQueue() {
+        try {
+            var position = segment.getAcknowledged();
+            for (var batch = segment.next(position, drainBatchSize()); batch != null; batch = segment.next(position, drainBatchSize())) {
+                position = batch.getTo();
+                var sent = batch;
+                var unconfirmed = new AtomicInteger((batch.getStarted().isEmpty() ? 0 : 1) + (batch.getEnded().isEmpty() ? 0 : 1));
+                Runnable acknowledge = () -> {
+                    if (unconfirmed.decrementAndGet() == 0) {
+                        segment.acknowledge(sent);
+                    }
+                };
+                if (!batch.getStarted().isEmpty()) {
+                    send(true, sent.getStarted(), acknowledge);
+                }
+                if (!batch.getEnded().isEmpty()) {
+                    send(false, sent.getEnded(), acknowledge);
+                }
+                resendUnsent();
+            }
+        } catch (InterruptedException e) {
+            segment.abandon();
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while draining the entry period queue of version " + currentVersion.getId(), e);
+        } catch (RuntimeException e) {
+            segment.abandon();
+            throw e;
+        }
+    }
+
+    private int drainBatchSize() {
+        return client.isBulkEntryPeriodsSupported() ? batchSize : 1;
+    }
+
+    /**
+     * A bulk request the API rejected as unsupported, to be sent again one domain at a time.
+     */
+    private static final class Unsent {
+        private final boolean start;
+        private final List<String> domains;
+        private final Runnable whenConfirmed;
+
+        private Unsent(boolean start, List<String> domains, Runnable whenConfirmed) {
+            this.start = start;
+            this.domains = domains;
+            this.whenConfirmed = whenConfirmed;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.UUID;
+
+/**
+ * What the loader knew about an upstream list the last time it was downloaded: the HTTP validators and the SHA-256
+ * of the downloaded bytes, and the version whose entries that download matched. The body hash is only compared
+ * with later downloads, never with the raw hash of a version.
+ */
+public class FetchState {
+    public static final FetchState EMPTY = new FetchState(null, null, null, null, null);
+    private final String url;
+    private final String etag;
+    private final String lastModified;
+    private final String bodySha256;
+    private final UUID versionId;
+
+    public FetchState(String url, String etag, String lastModified, String bodySha256, UUID versionId) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.bodySha256 = bodySha256;
+        this.versionId = versionId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getBodySha256() {
+        return bodySha256;
+    }
+
+    public UUID getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * Whether this state was recorded for the given url while the given version was the list's latest.
+     */
+    public boolean appliesTo(String url, UUID versionId) {
+        return this.url != null && this.url.equals(url) && this.versionId != null && this.versionId.equals(versionId);
+    }
+}
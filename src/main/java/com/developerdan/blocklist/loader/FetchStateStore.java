@@ -0,0 +1,84 @@
+package com.developerdan.blocklist.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Persists a {@link FetchState} per blocklist as a properties file.
+ */
+public class FetchStateStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FetchStateStore.class);
+    private final Path directory;
+
+    public FetchStateStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public static FetchStateStore disabled() {
+        return new FetchStateStore(null);
+    }
+
+    public FetchState read(UUID blocklistId) {
+        if (directory == null) {
+            return FetchState.EMPTY;
+        }
+        var file = stateFile(blocklistId);
+        if (!Files.isRegularFile(file)) {
+            return FetchState.EMPTY;
+        }
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+            var versionId = properties.getProperty("versionId");
+            return new FetchState(
+                    properties.getProperty("url"),
+                    properties.getProperty("etag"),
+                    properties.getProperty("lastModified"),
+                    properties.getProperty("bodySha256"),
+                    versionId == null ? null : UUID.fromString(versionId));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Unable to read fetch state {}: {}", file, e.getMessage());
+            return FetchState.EMPTY;
+        }
+    }
+
+    public void write(UUID blocklistId, FetchState state) {
+        if (directory == null) {
+            return;
+        }
+        var file = stateFile(blocklistId);
+        var properties = new Properties();
+        putIfPresent(properties, "url", state.getUrl());
+        putIfPresent(properties, "etag", state.getEtag());
+        putIfPresent(properties, "lastModified", state.getLastModified());
+        putIfPresent(properties, "bodySha256", state.getBodySha256());
+        putIfPresent(properties, "versionId", state.getVersionId() == null ? null : state.getVersionId().toString());
+        try {
+            Files.createDirectories(directory);
+            var temporaryFile = Files.createTempFile(directory, blocklistId.toString(), ".tmp");
+            try (var writer = Files.newBufferedWriter(temporaryFile)) {
+                properties.store(writer, null);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write fetch state {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path stateFile(UUID blocklistId) {
+        return directory.resolve(blocklistId + ".properties");
+    }
+
+    private static void putIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.developerdan.blocklist.loader;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Settings of one of the loader's HTTP clients. The API and the upstream list hosts each get a client of their
+ * own, so slow list hosts can not starve API calls and each side gets timeouts that fit its requests.
+ * <p>
+ * Request and transfer timeouts bound the time until the response headers arrive, as the JDK client does;
+ * the transfer timeout is used for requests whose server side takes long, like large bulk uploads and entry
+ * downloads. With HTTP/1.1 every request in flight uses a connection of its own, so the concurrency limit also
+ * bounds the number of connections; with HTTP/2 requests to the same host are multiplexed over one connection.
+ */
+public final class HttpClientSettings {
+    private final String name;
+    private final HttpClient.Version version;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final Duration transferTimeout;
+    private final int maxConcurrentRequests;
+
+    public HttpClientSettings(String name, HttpClient.Version version, Duration connectTimeout, Duration requestTimeout,
+                              Duration transferTimeout, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 0) {
+            throw new IllegalArgumentException("Concurrent requests of the " + name + " client can not be negative: " + maxConcurrentRequests);
+        }
+        this.name = name;
+        this.version = version;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.transferTimeout = transferTimeout;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpClient.Version getVersion() {
+        return version;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public Duration getTransferTimeout() {
+        return transferTimeout;
+    }
+
+    /**
+     * Requests the client sends at the same time; 0 for no limit.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @Override
+    public String toString() {
+        return name + " client: " + version + ", connect timeout " + connectTimeout.toMillis() + " ms, request timeout "
+                + requestTimeout.toMillis() + " ms, transfer timeout " + transferTimeout.toMillis() + " ms, "
+                + (maxConcurrentRequests == 0 ? "unlimited" : String.valueOf(maxConcurrentRequests)) + " concurrent requests";
+    }
+}
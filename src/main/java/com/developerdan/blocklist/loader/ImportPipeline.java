@@ -0,0 +1,57 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Prepares upcoming items in parallel while the caller consumes them strictly in order.
+ * At most {@code lookahead} items are prepared ahead of the one being consumed.
+ */
+public class ImportPipeline<S, T> implements AutoCloseable {
+    private final List<S> sources;
+    private final Function<S, T> preparer;
+    private final ExecutorService executor;
+    private final ArrayDeque<CompletableFuture<T>> prepared = new ArrayDeque<>();
+    private int nextToSchedule;
+
+    public ImportPipeline(List<S> sources, int lookahead, Function<S, T> preparer) {
+        this.sources = sources;
+        this.preparer = preparer;
+        this.executor = LoaderExecutors.perTask("import-prefetch");
+        for (var i = 0; i < Math.max(1, lookahead); i++) {
+            scheduleNext();
+        }
+    }
+
+    public boolean hasNext() {
+        return !prepared.isEmpty();
+    }
+
+    /**
+     * Returns the prepared result for the next source, waiting for it if needed. A failed preparation
+     * completes the returned future exceptionally and does not stop later sources from being prepared.
+     */
+    public CompletableFuture<T> next() {
+        var head = prepared.poll();
+        if (head == null) {
+            throw new IllegalStateException("No more sources to prepare");
+        }
+        scheduleNext();
+        return head;
+    }
+
+    private void scheduleNext() {
+        if (nextToSchedule < sources.size()) {
+            var source = sources.get(nextToSchedule++);
+            prepared.add(CompletableFuture.supplyAsync(() -> preparer.apply(source), executor));
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
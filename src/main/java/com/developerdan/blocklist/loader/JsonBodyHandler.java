@@ -4,22 +4,34 @@ import com.developerdan.blocklist.loader.entity.HistoricalList;
 import com.developerdan.blocklist.loader.entity.ListImport;
 import com.developerdan.blocklist.loader.entity.Version;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class JsonBodyHandler<W> implements HttpResponse.BodyHandler<W> {
+/**
+ * Deserializes JSON response bodies straight from the response stream, decoding compressed responses on the way.
+ * Bodies are handed out as a {@link Supplier} so the blocking read happens on the caller's thread, not on the HTTP
+ * client's executor.
+ */
+public class JsonBodyHandler<W> implements HttpResponse.BodyHandler<Supplier<W>> {
 
     private static final ObjectMapper MAPPER = new ObjectMapper()
             .registerModule(new ParameterNamesModule())
@@ -32,24 +44,70 @@ public class JsonBodyHandler<W> implements HttpResponse.BodyHandler<W> {
     }
 
     @Override
-    public HttpResponse.BodySubscriber<W> apply(HttpResponse.ResponseInfo responseInfo) {
-        return asJSON(wClass);
+    public HttpResponse.BodySubscriber<Supplier<W>> apply(HttpResponse.ResponseInfo responseInfo) {
+        if (isError(responseInfo)) {
+            return HttpResponse.BodySubscribers.replacing(() -> null);
+        }
+        return asJSON(responseInfo, wClass);
     }
 
-    public static <T> HttpResponse.BodySubscriber<T> asJSON(Class<T> targetType) {
-        HttpResponse.BodySubscriber<String> upstream = HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
-
+    public static <T> HttpResponse.BodySubscriber<Supplier<T>> asJSON(HttpResponse.ResponseInfo responseInfo, Class<T> targetType) {
         return HttpResponse.BodySubscribers.mapping(
-                upstream,
-                (String body) -> {
-                    try {
-                        return MAPPER.readValue(body, targetType);
+                HttpResponse.BodySubscribers.ofInputStream(),
+                body -> () -> {
+                    try (var input = ContentEncoding.decode(responseInfo.headers(), body)) {
+                        return MAPPER.readValue(input, targetType);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
                 });
     }
 
+    /**
+     * Body handler for a JSON array whose elements are deserialized one at a time as the stream is consumed.
+     * The returned stream must be closed.
+     */
+    public static <T> HttpResponse.BodyHandler<Supplier<Stream<T>>> ofArrayElements(Class<T> elementType) {
+        return responseInfo -> {
+            if (isError(responseInfo)) {
+                return HttpResponse.BodySubscribers.replacing(Stream::empty);
+            }
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofInputStream(),
+                    body -> () -> {
+                        try {
+                            return arrayElements(ContentEncoding.decode(responseInfo.headers(), body), elementType);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        };
+    }
+
+    /**
+     * Error responses are discarded rather than deserialized; callers check the status code.
+     */
+    private static boolean isError(HttpResponse.ResponseInfo responseInfo) {
+        return responseInfo.statusCode() >= 300;
+    }
+
+    static <T> Stream<T> arrayElements(InputStream input, Class<T> elementType) {
+        try {
+            MappingIterator<T> elements = MAPPER.readerFor(elementType).readValues(input);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(elements, Spliterator.ORDERED), false)
+                    .onClose(() -> {
+                        try {
+                            elements.close();
+                            input.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static HttpRequest.BodyPublisher requestFromVersion(Version version) {
         try {
             var body = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(version);
@@ -59,10 +117,26 @@ public class JsonBodyHandler<W> implements HttpResponse.BodyHandler<W> {
         }
     }
 
+    /**
+     * Reads the versions of a ListImport file one element at a time, without loading the whole file.
+     */
     public static List<HistoricalList> historicalLists(Path filePath) {
-        try {
-            var listImport = MAPPER.readValue(filePath.toFile(), ListImport.class);
-            var versions = Arrays.asList(listImport.getVersions());
+        var versions = new ArrayList<HistoricalList>();
+        try (var parser = MAPPER.getFactory().createParser(filePath.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object in " + filePath);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.getCurrentName();
+                var token = parser.nextToken();
+                if (!"versions".equals(field) || token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    versions.add(MAPPER.readValue(parser, HistoricalList.class));
+                }
+            }
             Collections.sort(versions);
             return versions;
         } catch (IOException ex) {
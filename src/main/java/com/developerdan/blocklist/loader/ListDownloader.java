@@ -0,0 +1,278 @@
+package com.developerdan.blocklist.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Downloads upstream lists to a temporary file, hashing their bytes on the way, and sends the validators of the
+ * previous download so unchanged lists can be answered with 304 Not Modified. Lists can also be
+ * {@link #stream streamed} to a reader as they arrive, without a temporary file.
+ */
+public class ListDownloader extends ApiClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListDownloader.class);
+
+    public ListDownloader() {
+        this(new Configuration().upstreamHttpClient());
+    }
+
+    public ListDownloader(HttpClientSettings settings) {
+        super(settings);
+    }
+
+    public Download download(String url, FetchState previous) {
+        return withDownloadPermit(url, () -> downloadToFile(url, previous));
+    }
+
+    private Download downloadToFile(String url, FetchState previous) throws IOException, InterruptedException {
+        Path file = null;
+        try {
+            var response = request(url, previous);
+            var etag = response.headers().firstValue("ETag").orElse(null);
+            var lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (response.statusCode() == 304) {
+                return notModified(url, previous, response);
+            }
+            file = Files.createTempFile("blocklist-", ".download");
+            var digest = sha256();
+            long size;
+            try (var body = new DigestInputStream(response.body(), digest)) {
+                size = Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.debug("Downloaded {} bytes from {}", size, url);
+            }
+            return new Download(url, file, false, size, HexFormat.of().formatHex(digest.digest()), etag, lastModified);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the list and hands its lines to the reader while the body is still arriving.
+     * The reader is not called when the server answers 304 Not Modified.
+     */
+    public <T> StreamedDownload<T> stream(String url, FetchState previous, Function<Stream<String>, T> reader) {
+        return withDownloadPermit(url, () -> {
+            var response = request(url, previous);
+            if (response.statusCode() == 304) {
+                var download = notModified(url, previous, response);
+                return new StreamedDownload<>(download, null);
+            }
+            var digest = sha256();
+            var counter = new CountingInputStream(new DigestInputStream(response.body(), digest));
+            T result;
+            try (var lines = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8)).lines()) {
+                result = reader.apply(lines);
+                // the hash has to cover the whole body, even if the reader stopped early
+                counter.transferTo(OutputStream.nullOutputStream());
+            } finally {
+                counter.close();
+            }
+            LOGGER.debug("Streamed {} bytes from {}", counter.count, url);
+            var download = new Download(url, null, false, counter.count, HexFormat.of().formatHex(digest.digest()),
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+            return new StreamedDownload<>(download, result);
+        });
+    }
+
+    /**
+     * Runs a download while holding one of the client's permits, so the limit covers reading the body too.
+     */
+    private <T> T withDownloadPermit(String url, Exchange<T> download) {
+        try {
+            return withPermit(download);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while downloading " + url, e);
+        }
+    }
+
+    private HttpResponse<InputStream> request(String url, FetchState previous) throws IOException, InterruptedException {
+        var builder = buildHttpRequest(url)
+                .setHeader("Accept", "text/plain, */*")
+                .timeout(getSettings().getTransferTimeout())
+                .GET();
+        if (previous.getEtag() != null) {
+            builder.header("If-None-Match", previous.getEtag());
+        }
+        if (previous.getLastModified() != null) {
+            builder.header("If-Modified-Since", previous.getLastModified());
+        }
+        var response = send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200 && response.statusCode() != 304) {
+            response.body().close();
+            throw new IOException("Unexpected status " + response.statusCode() + " downloading " + url);
+        }
+        return response;
+    }
+
+    private static Download notModified(String url, FetchState previous, HttpResponse<InputStream> response) throws IOException {
+        response.body().close();
+        LOGGER.debug("{} was not modified", url);
+        var etag = response.headers().firstValue("ETag").orElse(previous.getEtag());
+        var lastModified = response.headers().firstValue("Last-Modified").orElse(previous.getLastModified());
+        return new Download(url, null, true, 0, previous.getBodySha256(), etag, lastModified);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * A downloaded list. The temporary file is removed on {@link #close()}.
+     */
+    public static class Download implements AutoCloseable {
+        private final String url;
+        private final Path file;
+        private final boolean notModified;
+        private final long size;
+        private final String bodySha256;
+        private final String etag;
+        private final String lastModified;
+
+        Download(String url, Path file, boolean notModified, long size, String bodySha256, String etag, String lastModified) {
+            this.url = url;
+            this.file = file;
+            this.notModified = notModified;
+            this.size = size;
+            this.bodySha256 = bodySha256;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Number of bytes downloaded, 0 if the list was not modified.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * SHA-256 of the downloaded bytes, or of the previous download if the list was not modified. This is not
+         * the raw hash blocklist-tools reports for the list.
+         */
+        public String getBodySha256() {
+            return bodySha256;
+        }
+
+        /**
+         * Lines of the downloaded file; malformed UTF-8 is replaced rather than failing the list.
+         */
+        public Stream<String> lines() throws IOException {
+            if (file == null) {
+                throw new IllegalStateException("The body of " + url + " was not saved");
+            }
+            var reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8));
+            return reader.lines().onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        public FetchState toFetchState(UUID versionId) {
+            return new FetchState(url, etag, lastModified, bodySha256, versionId);
+        }
+
+        @Override
+        public void close() {
+            deleteQuietly(file);
+        }
+    }
+
+    /**
+     * A download whose body was handed to a reader instead of saved, together with what the reader returned.
+     */
+    public static class StreamedDownload<T> extends Download {
+        private final T result;
+
+        StreamedDownload(Download download, T result) {
+            super(download.url, null, download.notModified, download.size, download.bodySha256, download.etag, download.lastModified);
+            this.result = result;
+        }
+
+        /**
+         * What the reader returned, null if the list was not modified.
+         */
+        public T getResult() {
+            return result;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            var read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.developerdan.blocklist.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates sharded loader nodes through a directory they all share, so the lists of a node that crashed are
+ * picked up by the others. The directory holds:
+ * <ul>
+ *     <li>{@code shard-i-of-n.node}: when node {@code i} started and finished its run; its modification time is
+ *     the node's heartbeat.</li>
+ *     <li>{@code <blocklist>.lease}: the node loading a list. A lease is refreshed with the heartbeat and can be
+ *     taken over once it is older than the lease TTL.</li>
+ *     <li>{@code <blocklist>.loaded}: when a list was last loaded. A list loaded within the grace period before
+ *     this node started counts as loaded by the current run and is skipped.</li>
+ * </ul>
+ * The grace period also bounds how late a node may start: a shard whose node has not started within it is
+ * treated as abandoned. It has to be shorter than the time between runs.
+ */
+public class ListLeases implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListLeases.class);
+    private final Path directory;
+    private final Shard shard;
+    private final Duration ttl;
+    private final Duration grace;
+    private final String owner;
+    private final Instant started = Instant.now();
+    private final Set<Path> held = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeat;
+
+    public ListLeases(Path directory, Shard shard, Duration ttl, Duration grace) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Lease TTL must be positive: " + ttl);
+        }
+        this.directory = directory;
+        this.shard = shard;
+        this.ttl = ttl;
+        this.grace = grace;
+        this.owner = "shard-" + shard.getIndex() + "-of-" + shard.getCount() + "@" + hostName() + ":" + ProcessHandle.current().pid();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create lease directory " + directory, e);
+        }
+        writeNode(null);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(LoaderExecutors.platformThreadFactory("lease-heartbeat"));
+        var interval = getHeartbeatInterval().toMillis();
+        heartbeat.scheduleAtFixedRate(this::beat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public Shard getShard() {
+        return shard;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return ttl.dividedBy(3);
+    }
+
+    /**
+     * Takes the list's lease, unless another node holds one that has not expired.
+     */
+    public Optional<Lease> tryAcquire(UUID blocklistId) {
+        var file = directory.resolve(blocklistId + ".lease");
+        for (var attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.writeString(file, owner, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                held.add(file);
+                return Optional.of(new Lease(blocklistId, file));
+            } catch (FileAlreadyExistsException e) {
+                if (!takeOverExpired(file)) {
+                    return Optional.empty();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to lease blocklist " + blocklistId, e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Whether a node holds the list's lease and refreshed it within the TTL.
+     */
+    public boolean isLeased(UUID blocklistId) {
+        var modified = modified(directory.resolve(blocklistId + ".lease"));
+        return modified != null && !modified.isBefore(Instant.now().minus(ttl));
+    }
+
+    /**
+     * Whether the list was loaded by this run, by this node or any other.
+     */
+    public boolean isLoaded(UUID blocklistId) {
+        var lastLoaded = modified(directory.resolve(blocklistId + ".loaded"));
+        return lastLoaded != null && !lastLoaded.isBefore(runStarted());
+    }
+
+    /**
+     * What the node of another shard is doing in this run.
+     */
+    public ShardState shardState(int index) {
+        var file = nodeFile(index);
+        var heartbeat = modified(file);
+        try {
+            if (heartbeat != null) {
+                var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                var nodeStarted = Instant.parse(value(lines, 0, "started"));
+                var nodeFinished = value(lines, 1, "finished");
+                if (!nodeStarted.isBefore(runStarted())) {
+                    if (!"none".equals(nodeFinished)) {
+                        return ShardState.FINISHED;
+                    }
+                    return heartbeat.isBefore(Instant.now().minus(ttl)) ? ShardState.ABANDONED : ShardState.RUNNING;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read node file {}: {}", file, e.getMessage());
+        }
+        // no node of this run yet
+        return Instant.now().isAfter(started.plus(grace)) ? ShardState.ABANDONED : ShardState.STARTING;
+    }
+
+    /**
+     * Records that this node's run finished, so the others stop waiting for it.
+     */
+    public void finish() {
+        writeNode(Instant.now());
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+    }
+
+    private Instant runStarted() {
+        return started.minus(grace);
+    }
+
+    private boolean takeOverExpired(Path file) {
+        var modified = modified(file);
+        if (modified == null) {
+            // released in the meantime
+            return true;
+        }
+        if (!modified.isBefore(Instant.now().minus(ttl))) {
+            return false;
+        }
+        var expired = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".expired");
+        try {
+            // only one node manages to move the expired lease away
+            Files.move(file, expired, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Taking over expired lease {} of {}", file.getFileName(), Files.readString(expired, StandardCharsets.UTF_8));
+            Files.deleteIfExists(expired);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to take over expired lease {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private void beat() {
+        var now = FileTime.from(Instant.now());
+        try {
+            Files.setLastModifiedTime(nodeFile(shard.getIndex()), now);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to refresh node heartbeat in {}: {}", directory, e.getMessage());
+        }
+        for (var file : held) {
+            try {
+                Files.setLastModifiedTime(file, now);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to refresh lease {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void writeNode(Instant finished) {
+        var file = nodeFile(shard.getIndex());
+        var temporary = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.writeString(temporary, "started=" + started + "\nfinished=" + (finished == null ? "none" : finished) + "\nowner=" + owner + "\n",
+                    StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write node file " + file, e);
+        }
+    }
+
+    private Path nodeFile(int index) {
+        return directory.resolve("shard-" + index + "-of-" + shard.getCount() + ".node");
+    }
+
+    private static Instant modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String value(List<String> lines, int index, String key) {
+        var line = lines.get(index);
+        if (!line.startsWith(key + "=")) {
+            throw new IllegalArgumentException("Expected " + key + " on line " + (index + 1));
+        }
+        return line.substring(key.length() + 1);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+    public enum ShardState {
+        /** Its node has not started this run yet, and may still start within the grace period. */
+        STARTING,
+        RUNNING,
+        FINISHED,
+        /** Its node stopped sending heartbeats, or never started within the grace period. */
+        ABANDONED
+    }
+
+    /**
+     * A list this node is loading. Closing the lease releases it.
+     */
+    public final class Lease implements Closeable {
+        private final UUID blocklistId;
+        private final Path file;
+
+        private Lease(UUID blocklistId, Path file) {
+            this.blocklistId = blocklistId;
+            this.file = file;
+        }
+
+        /**
+         * Records that the list was loaded, so no other node of this run loads it again.
+         */
+        public void loaded() {
+            var marker = directory.resolve(blocklistId + ".loaded");
+            try {
+                Files.writeString(marker, Instant.now().toString(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to mark blocklist {} loaded: {}", blocklistId, e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            held.remove(file);
+            try {
+                if (owner.equals(Files.readString(file, StandardCharsets.UTF_8))) {
+                    Files.delete(file);
+                } else {
+                    LOGGER.warn("Lease of blocklist {} was taken over by another node", blocklistId);
+                }
+            } catch (NoSuchFileException e) {
+                LOGGER.warn("Lease of blocklist {} was taken over by another node", blocklistId);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to release lease of blocklist {}: {}", blocklistId, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Blocklist;
+
+import java.time.Duration;
+
+public class ListResult {
+    private final Blocklist blocklist;
+    private final boolean successful;
+    private final Duration duration;
+    private final String error;
+
+    public ListResult(Blocklist blocklist, boolean successful, Duration duration, String error) {
+        this.blocklist = blocklist;
+        this.successful = successful;
+        this.duration = duration;
+        this.error = error;
+    }
+
+    public Blocklist getBlocklist() {
+        return blocklist;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
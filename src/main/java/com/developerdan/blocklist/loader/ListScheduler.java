@@ -0,0 +1,192 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Blocklist;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Runs list loads concurrently, bounded by a global limit and a limit per download host.
+ * Lists whose host is saturated stay queued while lists from other hosts are started. Each running list gets
+ * its own thread from {@link LoaderExecutors}, so the limits are the only bound on concurrency.
+ * <p>
+ * A list that fails is queued again once the backoff of its {@link RetryPolicy} has passed. Nothing waits on
+ * its behalf in the meantime; the dispatcher keeps starting other lists until the delay is over.
+ */
+public class ListScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListScheduler.class);
+    private final int concurrency;
+    private final int hostConcurrency;
+    private final RetryPolicy retryPolicy;
+    private volatile int runningLists;
+    private volatile int queuedLists;
+    private volatile int listsWaitingToRetry;
+
+    public ListScheduler(int concurrency, int hostConcurrency) {
+        this(concurrency, hostConcurrency, RetryPolicy.none());
+    }
+
+    public ListScheduler(int concurrency, int hostConcurrency, RetryPolicy retryPolicy) {
+        if (concurrency < 1 || hostConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be at least 1");
+        }
+        this.concurrency = concurrency;
+        this.hostConcurrency = hostConcurrency;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public List<ListResult> run(List<Blocklist> lists, Predicate<Blocklist> loader) {
+        var executor = LoaderExecutors.perTask("list-loader");
+        try {
+            return run(lists, loader, new ExecutorCompletionService<Completed>(executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<ListResult> run(List<Blocklist> lists, Predicate<Blocklist> loader, CompletionService<Completed> completion) {
+        var pending = new ArrayDeque<Attempt>(lists.size());
+        lists.forEach(list -> pending.add(new Attempt(list, 1, Instant.now(), 0)));
+        var retries = new PriorityQueue<Attempt>(Comparator.comparingLong(Attempt::getDueNanos));
+        var runningPerHost = new HashMap<String, Integer>();
+        var results = new ArrayList<ListResult>(lists.size());
+        var running = 0;
+        while (!pending.isEmpty() || !retries.isEmpty() || running > 0) {
+            while (!retries.isEmpty() && retries.peek().getDueNanos() <= System.nanoTime()) {
+                pending.add(retries.poll());
+            }
+            running += dispatch(pending, runningPerHost, running, loader, completion);
+            runningLists = running;
+            queuedLists = pending.size();
+            listsWaitingToRetry = retries.size();
+            var completed = poll(completion, retries.isEmpty() ? Long.MAX_VALUE : retries.peek().getDueNanos() - System.nanoTime());
+            if (completed == null) {
+                continue;
+            }
+            running--;
+            runningLists = running;
+            var attempt = completed.attempt;
+            var result = completed.result;
+            runningPerHost.merge(downloadHost(result.getBlocklist()), -1, Integer::sum);
+            if (!result.isSuccessful() && retryPolicy.canRetry(attempt.number)) {
+                var delay = retryPolicy.delay(attempt.number);
+                LOGGER.warn("Attempt {} to load list {} failed, retrying in {} seconds", attempt.number, result.getBlocklist().getName(), delay.toSeconds());
+                retries.add(new Attempt(attempt.list, attempt.number + 1, attempt.firstStarted, System.nanoTime() + delay.toNanos()));
+                continue;
+            }
+            results.add(result);
+            LOGGER.info("Finished {} of {} lists ({} running, {} queued, {} waiting to retry)", results.size(), lists.size(), running, pending.size(), retries.size());
+        }
+        return results;
+    }
+
+    public int getRunning() {
+        return runningLists;
+    }
+
+    public int getQueued() {
+        return queuedLists;
+    }
+
+    public int getWaitingToRetry() {
+        return listsWaitingToRetry;
+    }
+
+    private int dispatch(ArrayDeque<Attempt> pending, Map<String, Integer> runningPerHost, int running,
+                         Predicate<Blocklist> loader, CompletionService<Completed> completion) {
+        var started = 0;
+        var iterator = pending.iterator();
+        while (running + started < concurrency && iterator.hasNext()) {
+            var attempt = iterator.next();
+            var host = downloadHost(attempt.list);
+            if (runningPerHost.getOrDefault(host, 0) >= hostConcurrency) {
+                continue;
+            }
+            iterator.remove();
+            runningPerHost.merge(host, 1, Integer::sum);
+            completion.submit(() -> new Completed(attempt, load(attempt, loader)));
+            started++;
+        }
+        return started;
+    }
+
+    private static ListResult load(Attempt attempt, Predicate<Blocklist> loader) {
+        var list = attempt.list;
+        try {
+            var successful = loader.test(list);
+            return new ListResult(list, successful, Duration.between(attempt.firstStarted, Instant.now()), null);
+        } catch (Throwable e) {
+            LOGGER.error("Loading list {} failed: {}", list.getName(), e.getMessage(), e);
+            return new ListResult(list, false, Duration.between(attempt.firstStarted, Instant.now()), e.toString());
+        }
+    }
+
+    private static Completed poll(CompletionService<Completed> completion, long timeoutNanos) {
+        try {
+            var future = completion.poll(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+            return future == null ? null : future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for lists to load", e);
+        } catch (ExecutionException e) {
+            // load() never throws, so this is a programming error
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static final class Attempt {
+        private final Blocklist list;
+        private final int number;
+        private final Instant firstStarted;
+        private final long dueNanos;
+
+        private Attempt(Blocklist list, int number, Instant firstStarted, long dueNanos) {
+            this.list = list;
+            this.number = number;
+            this.firstStarted = firstStarted;
+            this.dueNanos = dueNanos;
+        }
+
+        private long getDueNanos() {
+            return dueNanos;
+        }
+    }
+
+    private static final class Completed {
+        private final Attempt attempt;
+        private final ListResult result;
+
+        private Completed(Attempt attempt, ListResult result) {
+            this.attempt = attempt;
+            this.result = result;
+        }
+    }
+
+    static String downloadHost(Blocklist list) {
+        try {
+            var host = URI.create(list.getDownloadUrl()).getHost();
+            if (host != null) {
+                return host.toLowerCase(Locale.ROOT);
+            }
+        } catch (IllegalArgumentException | NullPointerException e) {
+            LOGGER.debug("Unable to parse download url {}", list.getDownloadUrl());
+        }
+        return String.valueOf(list.getDownloadUrl());
+    }
+}
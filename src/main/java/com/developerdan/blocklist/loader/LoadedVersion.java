@@ -0,0 +1,24 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+
+/**
+ * The version that represents a list after a load, together with its entries.
+ */
+public class LoadedVersion {
+    private final Version version;
+    private final DomainStore entries;
+
+    public LoadedVersion(Version version, DomainStore entries) {
+        this.version = version;
+        this.entries = entries;
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    public DomainStore getEntries() {
+        return entries;
+    }
+}
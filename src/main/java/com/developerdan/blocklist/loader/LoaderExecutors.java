@@ -0,0 +1,71 @@
+package com.developerdan.blocklist.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors the loader runs its tasks on: one thread per task, virtual when the runtime supports
+ * them (JDK 21+) and virtual threads are enabled, otherwise pooled platform threads. Concurrency is never
+ * bounded by these executors; callers bound it with permits.
+ * <p>
+ * The project is compiled for Java 17, so the virtual thread API is looked up reflectively.
+ */
+public final class LoaderExecutors {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoaderExecutors.class);
+    private static volatile boolean preferVirtualThreads = true;
+
+    private LoaderExecutors() {
+    }
+
+    public static void setPreferVirtualThreads(boolean prefer) {
+        preferVirtualThreads = prefer;
+    }
+
+    public static boolean usesVirtualThreads() {
+        return preferVirtualThreads && virtualThreadFactory("probe") != null;
+    }
+
+    public static ExecutorService perTask(String name) {
+        if (preferVirtualThreads) {
+            var factory = virtualThreadFactory(name);
+            if (factory != null) {
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                            .invoke(null, factory);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.debug("Virtual thread executor unavailable: {}", e.toString());
+                }
+            }
+        }
+        return Executors.newCachedThreadPool(platformThreadFactory(name));
+    }
+
+    static ThreadFactory platformThreadFactory(String name) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            var builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            LOGGER.debug("Virtual threads unavailable: {}", e.toString());
+            return null;
+        }
+    }
+}
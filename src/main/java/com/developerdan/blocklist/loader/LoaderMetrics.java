@@ -0,0 +1,263 @@
+package com.developerdan.blocklist.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of one loader run: API latency per client method, counters, gauges and the phases of each list.
+ * Everything is updated lock free from whichever thread does the work; {@link #snapshot()} renders the current
+ * values as a tree of maps that serializes to JSON, which is what the metrics endpoint serves and the run summary
+ * file contains.
+ */
+public class LoaderMetrics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoaderMetrics.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private final Instant started = Instant.now();
+    private final Map<String, Histogram> apiLatency = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<UUID, ListMetrics> lists = new ConcurrentHashMap<>();
+
+    /**
+     * Records the duration of an API request, by client method.
+     */
+    public void apiRequest(String method, long nanos, boolean failed) {
+        apiLatency.computeIfAbsent(method, ignored -> new Histogram()).record(nanos, failed);
+    }
+
+    public void increment(String counter, long amount) {
+        counters.computeIfAbsent(counter, ignored -> new LongAdder()).add(amount);
+    }
+
+    public void increment(String counter) {
+        increment(counter, 1);
+    }
+
+    public long count(String counter) {
+        var adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Registers a value that is read whenever a snapshot is taken. Registering a name again replaces the gauge.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public ListMetrics list(UUID blocklistId, String name) {
+        return lists.computeIfAbsent(blocklistId, id -> new ListMetrics(id, name));
+    }
+
+    public Map<String, Object> snapshot() {
+        var now = Instant.now();
+        var snapshot = new LinkedHashMap<String, Object>();
+        snapshot.put("started", started);
+        snapshot.put("updated", now);
+        snapshot.put("durationSeconds", Duration.between(started, now).toMillis() / 1000.0);
+        var gaugeValues = new LinkedHashMap<String, Long>();
+        gauges.forEach((name, value) -> gaugeValues.put(name, value.getAsLong()));
+        gaugeValues.put("heapUsedBytes", heapUsed());
+        snapshot.put("gauges", gaugeValues);
+        var counterValues = new LinkedHashMap<String, Long>();
+        counters.forEach((name, value) -> counterValues.put(name, value.sum()));
+        snapshot.put("counters", counterValues);
+        var latency = new LinkedHashMap<String, Object>();
+        apiLatency.forEach((method, histogram) -> latency.put(method, histogram.snapshot()));
+        snapshot.put("api", latency);
+        var listSnapshots = new ArrayList<Map<String, Object>>();
+        lists.values().stream()
+                .sorted(Comparator.comparingLong(ListMetrics::totalNanos).reversed())
+                .forEach(list -> listSnapshots.add(list.snapshot()));
+        snapshot.put("lists", listSnapshots);
+        return snapshot;
+    }
+
+    public byte[] toJson() throws IOException {
+        return MAPPER.writeValueAsBytes(snapshot());
+    }
+
+    /**
+     * Writes a snapshot to the file, replacing it atomically. Failures are logged, metrics never fail a run.
+     */
+    public void writeSummary(Path file) {
+        try {
+            var directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            var temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            Files.write(temporaryFile, toJson());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Wrote run summary to {}", file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to write run summary {}: {}", file, e.getMessage());
+        }
+    }
+
+    static long heapUsed() {
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Latency histogram with fixed, roughly logarithmic, millisecond buckets.
+     */
+    static final class Histogram {
+        private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000};
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MILLIS.length + 1];
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (var i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos, boolean failed) {
+            var millis = nanos / 1_000_000;
+            var bucket = 0;
+            while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            var counts = new long[buckets.length];
+            var count = 0L;
+            for (var i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            var snapshot = new LinkedHashMap<String, Object>();
+            snapshot.put("count", count);
+            snapshot.put("errors", errors.sum());
+            snapshot.put("meanMs", count == 0 ? 0 : totalNanos.sum() / count / 1_000_000.0);
+            snapshot.put("p50Ms", percentile(counts, count, 0.5));
+            snapshot.put("p90Ms", percentile(counts, count, 0.9));
+            snapshot.put("p99Ms", percentile(counts, count, 0.99));
+            snapshot.put("maxMs", maxNanos.get() / 1_000_000.0);
+            var bucketCounts = new LinkedHashMap<String, Long>();
+            for (var i = 0; i < counts.length; i++) {
+                bucketCounts.put(i < BOUNDS_MILLIS.length ? "le" + BOUNDS_MILLIS[i] : "inf", counts[i]);
+            }
+            snapshot.put("buckets", bucketCounts);
+            return snapshot;
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile, but never more than the maximum.
+         */
+        private double percentile(long[] counts, long count, double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            var rank = (long) Math.ceil(count * percentile);
+            var seen = 0L;
+            for (var i = 0; i < BOUNDS_MILLIS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BOUNDS_MILLIS[i], maxNanos.get() / 1_000_000.0);
+                }
+            }
+            return maxNanos.get() / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Phase timings and sizes of one list. Phases accumulate, so retries and history imports add up.
+     */
+    public static final class ListMetrics {
+        private final UUID blocklistId;
+        private final String name;
+        private final Map<String, LongAdder> phaseNanos = new ConcurrentSkipListMap<>();
+        private final Map<String, AtomicLong> values = new ConcurrentSkipListMap<>();
+        private final LongAccumulator maxHeapUsed = new LongAccumulator(Math::max, 0);
+        private volatile String outcome = "running";
+
+        private ListMetrics(UUID blocklistId, String name) {
+            this.blocklistId = blocklistId;
+            this.name = name;
+        }
+
+        /**
+         * Starts timing a phase; closing the returned timer adds the elapsed time and samples the heap.
+         */
+        public Timer phase(String phase) {
+            var startedNanos = System.nanoTime();
+            return () -> {
+                phaseNanos.computeIfAbsent(phase, ignored -> new LongAdder()).add(System.nanoTime() - startedNanos);
+                maxHeapUsed.accumulate(heapUsed());
+            };
+        }
+
+        public void set(String key, long value) {
+            values.computeIfAbsent(key, ignored -> new AtomicLong()).set(value);
+        }
+
+        public void add(String key, long amount) {
+            values.computeIfAbsent(key, ignored -> new AtomicLong()).addAndGet(amount);
+        }
+
+        public void finished(boolean successful) {
+            outcome = successful ? "loaded" : "failed";
+        }
+
+        private long totalNanos() {
+            return phaseNanos.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        private Map<String, Object> snapshot() {
+            var snapshot = new LinkedHashMap<String, Object>();
+            snapshot.put("id", blocklistId);
+            snapshot.put("name", name);
+            snapshot.put("outcome", outcome);
+            var phases = new LinkedHashMap<String, Double>();
+            phaseNanos.forEach((phase, nanos) -> phases.put(phase, nanos.sum() / 1_000_000_000.0));
+            snapshot.put("phaseSeconds", phases);
+            snapshot.put("totalSeconds", totalNanos() / 1_000_000_000.0);
+            values.forEach((key, value) -> snapshot.put(key, value.get()));
+            snapshot.put("maxHeapUsedBytes", maxHeapUsed.get());
+            return snapshot;
+        }
+    }
+
+    /**
+     * A running phase; {@link #close()} does not throw.
+     */
+    @FunctionalInterface
+    public interface Timer extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
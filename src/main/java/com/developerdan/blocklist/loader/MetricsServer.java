@@ -0,0 +1,52 @@
+package com.developerdan.blocklist.loader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves the current {@link LoaderMetrics} snapshot as JSON on {@code GET /metrics}.
+ */
+public class MetricsServer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsServer.class);
+    private final HttpServer server;
+
+    public MetricsServer(int port, LoaderMetrics metrics) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start the metrics endpoint on port " + port, e);
+        }
+        server.setExecutor(LoaderExecutors.perTask("metrics"));
+        server.createContext("/metrics", exchange -> respond(exchange, metrics));
+        server.start();
+        LOGGER.info("Serving metrics on http://localhost:{}/metrics", server.getAddress().getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, LoaderMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var body = metrics.toJson();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,203 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.BlocklistParser;
+import com.developerdan.blocklist.tools.Domain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Parses a downloaded list on several cores. The file is cut into chunks at line ends and each chunk is
+ * memory-mapped, decoded and handed to a parser of its own in a fork-join pool, since parsers are not thread-safe.
+ * The domains of each chunk are sorted on their {@link DomainStore} key, and the sorted chunks are merged pairwise
+ * into one {@link DomainStore}. Lines are parsed independently, as {@link StreamingListParser} also assumes, so the
+ * entries are exactly those of a single parse of the whole file.
+ * <p>
+ * The parsed SHA-256 is the one a parser of the list's format reports for the merged domains, see
+ * {@link ParserHash}, so it is the hash a single parse of the file reports. Should that parser not give back every
+ * merged domain, the file is parsed again on one thread.
+ */
+public class ParallelListParser {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelListParser.class);
+    private static final int CHUNK_BYTES = 4 << 20;
+    private final Supplier<BlocklistParser<Domain>> parsers;
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    /**
+     * @param parsers a new parser for every call, one is used per chunk
+     */
+    public ParallelListParser(Supplier<BlocklistParser<Domain>> parsers, ForkJoinPool pool) {
+        this(parsers, pool, CHUNK_BYTES);
+    }
+
+    ParallelListParser(Supplier<BlocklistParser<Domain>> parsers, ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("Chunks must hold at least one byte: " + chunkBytes);
+        }
+        this.parsers = parsers;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public StreamingListParser.Result parse(Path file) {
+        var started = System.nanoTime();
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var offsets = chunks(channel);
+            var keys = offsets.isEmpty() ? new String[0] : pool.invoke(new ParseTask(channel, offsets, 0, offsets.size() - 1));
+            return build(file, keys, started);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to parse " + file, e);
+        }
+    }
+
+    /**
+     * Start offsets of chunks of about {@code chunkBytes}, each moved forward to just after a line end; the last
+     * offset is the file size.
+     */
+    private List<Long> chunks(FileChannel channel) throws IOException {
+        var size = channel.size();
+        var offsets = new ArrayList<Long>();
+        var buffer = ByteBuffer.allocate(8192);
+        var start = 0L;
+        while (start < size) {
+            offsets.add(start);
+            start = lineEndAfter(channel, Math.min(size, start + chunkBytes), size, buffer);
+        }
+        if (!offsets.isEmpty()) {
+            offsets.add(size);
+        }
+        return offsets;
+    }
+
+    private static long lineEndAfter(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            var read = channel.read(buffer, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (var i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private String[] parseChunk(FileChannel channel, long start, long end) throws IOException {
+        // a chunk only ends after '\n', which never occurs inside a multi-byte UTF-8 sequence
+        var text = StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)).toString();
+        var records = parsers.get().parseStream(text.lines()).getRecords();
+        var keys = new String[records.size()];
+        var i = 0;
+        for (var domain : records) {
+            keys[i++] = DomainStore.reverseLabels(domain.toString());
+        }
+        Arrays.sort(keys);
+        return distinct(keys);
+    }
+
+    private static String[] merge(String[] left, String[] right) {
+        var merged = new String[left.length + right.length];
+        var l = 0;
+        var r = 0;
+        var size = 0;
+        while (l < left.length && r < right.length) {
+            var comparison = left[l].compareTo(right[r]);
+            if (comparison <= 0) {
+                merged[size++] = left[l++];
+                if (comparison == 0) {
+                    r++;
+                }
+            } else {
+                merged[size++] = right[r++];
+            }
+        }
+        while (l < left.length) {
+            merged[size++] = left[l++];
+        }
+        while (r < right.length) {
+            merged[size++] = right[r++];
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    private static String[] distinct(String[] sorted) {
+        var size = 0;
+        for (var i = 0; i < sorted.length; i++) {
+            if (size == 0 || !sorted[size - 1].equals(sorted[i])) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    private StreamingListParser.Result build(Path file, String[] keys, long started) throws IOException {
+        var builder = new DomainStore.Builder();
+        for (var key : keys) {
+            builder.addKey(key);
+        }
+        var entries = builder.build();
+        var parsedSha256 = ParserHash.of(parsers.get(), entries, entries.size());
+        if (parsedSha256.isPresent()) {
+            return new StreamingListParser.Result(parsedSha256.get(), entries, 0, System.nanoTime() - started);
+        }
+        LOGGER.warn("The parser gives other records for the {} domains parsed from {}, parsing it again on one thread", keys.length, file);
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            var serial = parsers.get().parseStream(lines);
+            return new StreamingListParser.Result(serial.getParsedSha(), DomainStore.copyOf(serial.getRecords(), Domain::toString), 0,
+                    System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Sorted, distinct keys of the chunks {@code from} to {@code to}: one chunk is parsed, more are split in half
+     * and the halves merged.
+     */
+    private final class ParseTask extends RecursiveTask<String[]> {
+        private final FileChannel channel;
+        private final List<Long> offsets;
+        private final int from;
+        private final int to;
+
+        private ParseTask(FileChannel channel, List<Long> offsets, int from, int to) {
+            this.channel = channel;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected String[] compute() {
+            if (to - from == 1) {
+                try {
+                    return parseChunk(channel, offsets.get(from), offsets.get(to));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            var middle = (from + to) >>> 1;
+            var right = new ParseTask(channel, offsets, middle, to);
+            right.fork();
+            var left = new ParseTask(channel, offsets, from, middle).compute();
+            return merge(left, right.join());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.BlocklistParser;
+import com.developerdan.blocklist.tools.Domain;
+import com.developerdan.blocklist.tools.DomainListParser;
+import com.developerdan.blocklist.tools.HostsParser;
+
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+import java.util.stream.StreamSupport;
+
+/**
+ * The parsed SHA-256 of entries the loader did not get from a single parse of the list, such as entries parsed in
+ * pieces or rebuilt from a snapshot. They are written back as lines of the parser's format and parsed once more, so
+ * the hash is the one the parser reports for the list, whatever it covers. The parser holds the entries meanwhile.
+ */
+final class ParserHash {
+    private ParserHash() {
+    }
+
+    /**
+     * The hash the parser reports for the entries, or empty if parsing them again does not give as many records.
+     */
+    static Optional<String> of(BlocklistParser<Domain> parser, Iterable<String> entries, long size) {
+        var line = lineFormat(parser);
+        var parsedList = parser.parseStream(StreamSupport.stream(entries.spliterator(), false).map(line));
+        if (parsedList.getRecords().size() != size) {
+            return Optional.empty();
+        }
+        return Optional.of(parsedList.getParsedSha());
+    }
+
+    private static UnaryOperator<String> lineFormat(BlocklistParser<Domain> parser) {
+        if (parser instanceof HostsParser) {
+            return domain -> "0.0.0.0 " + domain;
+        }
+        if (parser instanceof DomainListParser) {
+            return UnaryOperator.identity();
+        }
+        throw new IllegalArgumentException("Unknown parser: " + parser.getClass().getName());
+    }
+}
@@ -0,0 +1,31 @@
+package com.developerdan.blocklist.loader;
+
+/**
+ * A downloaded and parsed list, ready to be diffed against the list's previous version.
+ */
+public class PreparedList {
+    private final String url;
+    private final String parsedSha256;
+    private final DomainStore entries;
+
+    public PreparedList(String url, String parsedSha256, DomainStore entries) {
+        this.url = url;
+        this.parsedSha256 = parsedSha256;
+        this.entries = entries;
+    }
+
+    /**
+     * Where the list was downloaded from.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getParsedSha256() {
+        return parsedSha256;
+    }
+
+    public DomainStore getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,153 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * When each list is refreshed next in daemon mode. A list starts with half the typical time between its
+ * versions, judged from the gaps between their creation times, and is first due one interval after its newest
+ * version was last seen. After that the interval halves when a refresh finds a change and grows by half when it
+ * finds none, always within the configured bounds. Lists that change hourly end up polled often, dormant ones
+ * rarely.
+ */
+public class RefreshSchedule {
+    private static final int HISTORY_VERSIONS = 10;
+    private final Duration minInterval;
+    private final Duration maxInterval;
+    private final Map<UUID, Entry> entries = new HashMap<>();
+
+    public RefreshSchedule(Duration minInterval, Duration maxInterval) {
+        if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("Invalid refresh interval bounds: " + minInterval + ".." + maxInterval);
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Number of fully loaded versions, newest first, {@link #add} looks at.
+     */
+    public static int historyVersions() {
+        return HISTORY_VERSIONS;
+    }
+
+    public synchronized boolean contains(UUID blocklistId) {
+        return entries.containsKey(blocklistId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Schedules a list from its fully loaded versions, newest first.
+     */
+    public synchronized void add(UUID blocklistId, List<Version> history, Instant now) {
+        var interval = clamp(typicalChangeInterval(history).map(gap -> gap.dividedBy(2)).orElse(minInterval));
+        var due = history.isEmpty() ? now : history.get(0).getLastSeen().plus(interval);
+        entries.put(blocklistId, new Entry(interval, due.isBefore(now) ? now : due));
+    }
+
+    /**
+     * Reschedules a list after a refresh: sooner if it changed, later if not, and after the shortest interval if the
+     * refresh failed.
+     */
+    public synchronized void record(UUID blocklistId, Outcome outcome, Instant now) {
+        var entry = entries.get(blocklistId);
+        if (entry == null) {
+            return;
+        }
+        switch (outcome) {
+            case CHANGED:
+                entry.interval = clamp(entry.interval.dividedBy(2));
+                entry.due = now.plus(entry.interval);
+                break;
+            case UNCHANGED:
+                entry.interval = clamp(entry.interval.multipliedBy(3).dividedBy(2));
+                entry.due = now.plus(entry.interval);
+                break;
+            default:
+                entry.due = now.plus(minInterval);
+        }
+    }
+
+    /**
+     * Drops lists that are no longer in the catalog.
+     */
+    public synchronized void retain(Collection<UUID> blocklistIds) {
+        entries.keySet().retainAll(blocklistIds);
+    }
+
+    public synchronized List<UUID> due(Instant now) {
+        var due = new ArrayList<UUID>();
+        entries.forEach((blocklistId, entry) -> {
+            if (!entry.due.isAfter(now)) {
+                due.add(blocklistId);
+            }
+        });
+        return due;
+    }
+
+    public synchronized Optional<Instant> nextDue() {
+        return entries.values().stream().map(entry -> entry.due).min(Instant::compareTo);
+    }
+
+    public synchronized Optional<Duration> interval(UUID blocklistId) {
+        return Optional.ofNullable(entries.get(blocklistId)).map(entry -> entry.interval);
+    }
+
+    /**
+     * Median gap between the creation of consecutive versions; with a single version, how long it has been seen.
+     */
+    private static Optional<Duration> typicalChangeInterval(List<Version> history) {
+        if (history.isEmpty()) {
+            return Optional.empty();
+        }
+        if (history.size() == 1) {
+            return Optional.of(Duration.between(history.get(0).getCreatedOn(), history.get(0).getLastSeen()));
+        }
+        var gaps = new ArrayList<Duration>(history.size() - 1);
+        for (var i = 1; i < history.size(); i++) {
+            gaps.add(Duration.between(history.get(i).getCreatedOn(), history.get(i - 1).getCreatedOn()).abs());
+        }
+        gaps.sort(Duration::compareTo);
+        return Optional.of(gaps.get(gaps.size() / 2));
+    }
+
+    private Duration clamp(Duration interval) {
+        if (interval.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return interval.compareTo(maxInterval) > 0 ? maxInterval : interval;
+    }
+
+    /**
+     * What a refresh found.
+     */
+    public enum Outcome {
+        /** A new version was loaded. */
+        CHANGED,
+        /** The list matched its previous version. */
+        UNCHANGED,
+        FAILED
+    }
+
+    private static final class Entry {
+        private Duration interval;
+        private Instant due;
+
+        private Entry(Duration interval, Instant due) {
+            this.interval = interval;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.developerdan.blocklist.loader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a bounded number of API requests in flight. A permit is taken before each request is sent
+ * and handed back as soon as it completes, so a slow request only holds its own slot.
+ * <p>
+ * The limit adapts AIMD style: it grows by one after a full window of attempts finished under the
+ * latency target and is halved (at most once per latency target interval) on a failed or slow attempt.
+ * Attempts are reported one by one through {@link #recordAttempt} by the client sending them, so a request that
+ * is retried contributes each try's latency rather than a total that includes the backoff between tries.
+ * One window is meant to be shared by every list so the limit reflects the API's total capacity;
+ * each caller tracks its own requests through a {@link Tracker}.
+ */
+public class RequestWindow {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestWindow.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final long createdNanos = System.nanoTime();
+    private int limit;
+    private int inFlight;
+    private int waiting;
+    private int successesSinceIncrease;
+    private long lastDecreaseNanos;
+    private long completed;
+    private long failed;
+
+    public RequestWindow(int initialLimit, int minLimit, int maxLimit, Duration latencyTarget) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid window bounds: " + minLimit + ".." + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.lastDecreaseNanos = createdNanos - latencyTargetNanos;
+    }
+
+    public Tracker newTracker() {
+        return new Tracker();
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Requests waiting for a permit.
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompleted() {
+        lock.lock();
+        try {
+            return completed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFailed() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completed requests per second since the window was created.
+     */
+    public double getThroughput() {
+        var seconds = (System.nanoTime() - createdNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : getCompleted() / seconds;
+    }
+
+    private void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (inFlight >= limit) {
+                    permitReleased.await();
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adapts the limit to one attempt of a request sent under this window.
+     */
+    public void recordAttempt(long nanos, boolean failed) {
+        var now = System.nanoTime();
+        lock.lock();
+        try {
+            if (failed || nanos > latencyTargetNanos) {
+                decrease(now);
+            } else if (++successesSinceIncrease >= limit) {
+                successesSinceIncrease = 0;
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Throwable error) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (error == null) {
+                completed++;
+            } else {
+                failed++;
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long now) {
+        successesSinceIncrease = 0;
+        if (now - lastDecreaseNanos < latencyTargetNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        var previousLimit = limit;
+        limit = Math.max(minLimit, limit / 2);
+        LOGGER.debug("Request window decreased from {} to {}", previousLimit, limit);
+    }
+
+    /**
+     * Tracks the requests of a single caller so it can wait for exactly those and see their first failure.
+     */
+    public class Tracker {
+        private final ReentrantLock trackerLock = new ReentrantLock();
+        private final Condition drained = trackerLock.newCondition();
+        private int pending;
+        private Throwable failure;
+
+        public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+            throwIfFailed();
+            try {
+                acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException("Interrupted while waiting for a request permit", e);
+            }
+            started();
+            CompletableFuture<T> future;
+            try {
+                future = request.get();
+            } catch (RuntimeException e) {
+                finished(e);
+                throw e;
+            }
+            return future.whenComplete((result, error) -> finished(error));
+        }
+
+        /**
+         * Blocks until every submitted request completed and rethrows the first failure, if any.
+         */
+        public void awaitCompletion() {
+            awaitRequests();
+            throwIfFailed();
+        }
+
+        /**
+         * Blocks until every submitted request completed, without looking at their failures.
+         */
+        public void awaitRequests() {
+            trackerLock.lock();
+            try {
+                while (pending > 0) {
+                    drained.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ApiException("Interrupted while waiting for requests to complete", e);
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        private void started() {
+            trackerLock.lock();
+            try {
+                pending++;
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        private void finished(Throwable error) {
+            release(error);
+            trackerLock.lock();
+            try {
+                pending--;
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                drained.signalAll();
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        private void throwIfFailed() {
+            Throwable error;
+            trackerLock.lock();
+            try {
+                error = failure;
+            } finally {
+                trackerLock.unlock();
+            }
+            if (error == null) {
+                return;
+            }
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            throw new ApiException(error);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.developerdan.blocklist.loader;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries transient failures with exponential backoff and jitter. The delay before retry {@code n} is drawn
+ * from {@code [d/2, d]} with {@code d = min(maxDelay, baseDelay * 2^(n-1))}, so callers that failed together
+ * do not retry together.
+ * <p>
+ * Only failures that may succeed on a second try are retried: I/O errors, timeouts and the 408, 425, 429 and 5xx
+ * statuses of an {@link ApiException}. Asynchronous retries are scheduled on a delayed executor and hold no thread
+ * while they wait.
+ */
+public class RetryPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryPolicy.class);
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(408, 425, 429, 500, 502, 503, 504);
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final Runnable retryListener;
+
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this(maxAttempts, baseDelay, maxDelay, () -> { });
+    }
+
+    /**
+     * @param retryListener called once for every retry, for example to count them
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Runnable retryListener) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay.compareTo(baseDelay) < 0 ? baseDelay : maxDelay;
+        this.retryListener = retryListener;
+    }
+
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Whether another attempt may follow the given, 1-based, failed attempt.
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * Delay to wait after the given, 1-based, failed attempt. Each call is reported to the retry listener.
+     */
+    public Duration delay(int attempt) {
+        retryListener.run();
+        var ceiling = baseDelay.toMillis() << Math.min(attempt - 1, 20);
+        if (ceiling <= 0 || ceiling > maxDelay.toMillis()) {
+            ceiling = maxDelay.toMillis();
+        }
+        var half = ceiling / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(ceiling - half + 1));
+    }
+
+    /**
+     * Runs the call, sleeping between attempts. Only meant for idempotent requests.
+     */
+    public <T> T call(String description, Callable<T> call) {
+        for (var attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new ApiException("Interrupted while trying to " + description, e);
+                }
+                if (!canRetry(attempt) || !isRetryable(e)) {
+                    throw e instanceof RuntimeException ? (RuntimeException) e : new ApiException("Unable to " + description, e);
+                }
+                var delay = delay(attempt);
+                LOGGER.warn("Attempt {} to {} failed ({}), retrying in {} ms", attempt, description, e.getMessage(), delay.toMillis());
+                sleep(delay, description);
+            }
+        }
+    }
+
+    /**
+     * Runs the asynchronous call, starting a new one after a delay whenever it fails with a retryable error.
+     */
+    public <T> CompletableFuture<T> callAsync(String description, Supplier<CompletableFuture<T>> call) {
+        var result = new CompletableFuture<T>();
+        attempt(description, call, 1, result);
+        return result;
+    }
+
+    private <T> void attempt(String description, Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (canRetry(attempt) && isRetryable(error)) {
+                var delay = delay(attempt);
+                LOGGER.debug("Attempt {} to {} failed ({}), retrying in {} ms", attempt, description, unwrap(error).getMessage(), delay.toMillis());
+                CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(description, call, attempt + 1, result));
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+    }
+
+    public static boolean isRetryable(Throwable error) {
+        // a malformed body stays malformed, however deep in I/O exceptions the parser error is wrapped
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException) {
+                return false;
+            }
+        }
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException && ((ApiException) cause).getStatusCode() != 0) {
+                return isRetryableStatus(((ApiException) cause).getStatusCode());
+            }
+            if (cause instanceof IOException || cause instanceof UncheckedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a response status says the API is overloaded or briefly unavailable rather than rejecting the request.
+     */
+    public static boolean isRetryableStatus(int statusCode) {
+        return RETRYABLE_STATUSES.contains(statusCode);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private static void sleep(Duration delay, String description) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while waiting to retry " + description, e);
+        }
+    }
+}
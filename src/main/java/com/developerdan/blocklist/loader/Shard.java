@@ -0,0 +1,81 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.UUID;
+
+/**
+ * One of {@code count} loader nodes that split the lists between them, written {@code index/count}. A list
+ * belongs to the shard with the highest hash of the list id and the shard index (rendezvous hashing), so every
+ * node computes the same split without talking to the others, and changing the node count only moves the lists
+ * of the shards that were added or removed.
+ */
+public final class Shard {
+    private final int index;
+    private final int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Parses {@code index/count}, with index counted from 0.
+     */
+    public static Shard parse(String value) {
+        var separator = value.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected a shard as index/count, got: " + value);
+        }
+        try {
+            return new Shard(Integer.parseInt(value.substring(0, separator).trim()), Integer.parseInt(value.substring(separator + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a shard as index/count, got: " + value, e);
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean owns(UUID blocklistId) {
+        return owner(blocklistId) == index;
+    }
+
+    /**
+     * Index of the shard the list belongs to.
+     */
+    public int owner(UUID blocklistId) {
+        var owner = 0;
+        var highest = Long.MIN_VALUE;
+        for (var candidate = 0; candidate < count; candidate++) {
+            var weight = weight(blocklistId, candidate);
+            if (weight > highest) {
+                highest = weight;
+                owner = candidate;
+            }
+        }
+        return owner;
+    }
+
+    private static long weight(UUID blocklistId, int shard) {
+        return mix(mix(blocklistId.getMostSignificantBits() ^ shard) ^ blocklistId.getLeastSignificantBits());
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,177 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Keeps the entries of each list's last fully loaded version on local disk, so the next run can diff against
+ * it without downloading the version from the API. One file per blocklist holds the version id, its parsed
+ * SHA-256 and the {@link DomainStore} bytes; files are read back through a memory-mapped buffer.
+ */
+public class SnapshotCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotCache.class);
+    private static final int MAGIC = 0x424C5331;
+    private static final int FORMAT_VERSION = 1;
+    private final Path directory;
+
+    public SnapshotCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public static SnapshotCache disabled() {
+        return new SnapshotCache(null);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Returns the cached entries of the version, if the snapshot on disk is of exactly this version.
+     */
+    public Optional<DomainStore> read(Version version) {
+        var snapshot = latest(version.getBlocklistId());
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!snapshot.get().isOf(version)) {
+            LOGGER.debug("Snapshot of blocklist {} is of version {}, not {}", version.getBlocklistId(), snapshot.get().getVersionId(), version.getId());
+            return Optional.empty();
+        }
+        var store = snapshot.get().getEntries();
+        LOGGER.info("Using local snapshot of version {} with {} entries", version.getId(), store.size());
+        return Optional.of(store);
+    }
+
+    /**
+     * Returns the blocklist's snapshot, whichever version it is of.
+     */
+    public Optional<Snapshot> latest(UUID blocklistId) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        var file = snapshotFile(blocklistId);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring snapshot {} with unknown format", file);
+                return Optional.empty();
+            }
+            var versionId = new UUID(buffer.getLong(), buffer.getLong());
+            var parsedSha256 = readString(buffer);
+            var size = buffer.getInt();
+            var blockOffsets = new int[buffer.getInt()];
+            var dataLength = buffer.getInt();
+            buffer.asIntBuffer().get(blockOffsets);
+            buffer.position(buffer.position() + blockOffsets.length * Integer.BYTES);
+            if (buffer.remaining() != dataLength) {
+                LOGGER.warn("Ignoring truncated snapshot {}", file);
+                return Optional.empty();
+            }
+            return Optional.of(new Snapshot(versionId, parsedSha256, new DomainStore(buffer.slice(), blockOffsets, size)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read snapshot {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the blocklist's snapshot with the entries of the given, fully loaded, version.
+     * Failures are logged and otherwise ignored, the cache is only an optimization.
+     */
+    public void write(Version version, DomainStore entries) {
+        if (!isEnabled()) {
+            return;
+        }
+        var file = snapshotFile(version.getBlocklistId());
+        try {
+            Files.createDirectories(directory);
+            var temporaryFile = Files.createTempFile(directory, version.getBlocklistId().toString(), ".tmp");
+            try (var channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var data = entries.data();
+                var blockOffsets = entries.blockOffsets();
+                var sha = String.valueOf(version.getParsedSha256()).getBytes(StandardCharsets.UTF_8);
+                var header = ByteBuffer.allocate(40 + sha.length + blockOffsets.length * Integer.BYTES);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION)
+                        .putLong(version.getId().getMostSignificantBits())
+                        .putLong(version.getId().getLeastSignificantBits())
+                        .putInt(sha.length).put(sha)
+                        .putInt(entries.size())
+                        .putInt(blockOffsets.length)
+                        .putInt(data.remaining());
+                header.asIntBuffer().put(blockOffsets);
+                header.position(header.limit());
+                header.flip();
+                writeFully(channel, header);
+                writeFully(channel, data);
+                channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporaryFile);
+                throw e;
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Wrote snapshot of version {} to {}", version.getId(), file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to write snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path snapshotFile(UUID blocklistId) {
+        return directory.resolve(blocklistId + ".snapshot");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The entries of one version, as read from disk.
+     */
+    public static final class Snapshot {
+        private final UUID versionId;
+        private final String parsedSha256;
+        private final DomainStore entries;
+
+        private Snapshot(UUID versionId, String parsedSha256, DomainStore entries) {
+            this.versionId = versionId;
+            this.parsedSha256 = parsedSha256;
+            this.entries = entries;
+        }
+
+        public boolean isOf(Version version) {
+            return versionId.equals(version.getId()) && Objects.equals(parsedSha256, version.getParsedSha256());
+        }
+
+        public UUID getVersionId() {
+            return versionId;
+        }
+
+        public DomainStore getEntries() {
+            return entries;
+        }
+    }
+}
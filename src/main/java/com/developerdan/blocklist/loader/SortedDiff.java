@@ -0,0 +1,89 @@
+package com.developerdan.blocklist.loader;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+/**
+ * Diffs two sorted inputs in a single merge pass, without building their union.
+ */
+public final class SortedDiff {
+
+    public interface Sink<T> {
+        void added(T entry);
+
+        void removed(T entry);
+
+        void unchanged(T entry);
+
+        /**
+         * Reports a number of unchanged entries at once, for diffs that do not materialize them.
+         */
+        default void unchangedCount(long count) {
+        }
+    }
+
+    private SortedDiff() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> void diff(NavigableSet<T> previous, NavigableSet<T> current, Sink<? super T> sink) {
+        Comparator<? super T> comparator = current.comparator() != null ? current.comparator() : (Comparator<? super T>) Comparator.naturalOrder();
+        SortedDiff.<T>diff(previous.iterator(), current.iterator(), comparator, sink);
+    }
+
+    /**
+     * Both iterators must be strictly ascending according to the comparator.
+     */
+    public static <T> void diff(Iterator<? extends T> previous, Iterator<? extends T> current, Comparator<? super T> comparator, Sink<? super T> sink) {
+        var previousEntries = new Ascending<T>(previous, comparator);
+        var currentEntries = new Ascending<T>(current, comparator);
+        T previousEntry = previousEntries.next();
+        T currentEntry = currentEntries.next();
+        while (previousEntry != null && currentEntry != null) {
+            var comparison = comparator.compare(previousEntry, currentEntry);
+            if (comparison < 0) {
+                sink.removed(previousEntry);
+                previousEntry = previousEntries.next();
+            } else if (comparison > 0) {
+                sink.added(currentEntry);
+                currentEntry = currentEntries.next();
+            } else {
+                sink.unchanged(currentEntry);
+                previousEntry = previousEntries.next();
+                currentEntry = currentEntries.next();
+            }
+        }
+        while (previousEntry != null) {
+            sink.removed(previousEntry);
+            previousEntry = previousEntries.next();
+        }
+        while (currentEntry != null) {
+            sink.added(currentEntry);
+            currentEntry = currentEntries.next();
+        }
+    }
+
+    private static final class Ascending<T> {
+        private final Iterator<? extends T> iterator;
+        private final Comparator<? super T> comparator;
+        private T last;
+
+        private Ascending(Iterator<? extends T> iterator, Comparator<? super T> comparator) {
+            this.iterator = iterator;
+            this.comparator = comparator;
+        }
+
+        private T next() {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            T next = iterator.next();
+            if (last != null && comparator.compare(last, next) >= 0) {
+                throw new IllegalArgumentException("Diff input is not strictly ascending: <" + last + "> before <" + next + ">");
+            }
+            last = next;
+            return next;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.developerdan.blocklist.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts more domains than fit in memory. Domains are buffered up to a run size, sorted on their
+ * {@link DomainStore} key and written to a temporary run file; reading does a k-way merge of the runs.
+ * Keys come out in {@link DomainStore#COMPARATOR} order without duplicates. Input that fits in one run never
+ * touches the disk. Memory use is bounded by the run size and a small I/O buffer per run.
+ */
+final class SpillingSorter implements Closeable {
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+    private static final int MAX_HEADER_BYTES = 10;
+    private final Path directory;
+    private final String[] buffer;
+    private final List<Run> runs = new ArrayList<>();
+    private int buffered;
+
+    /**
+     * Builds a store from domains in any order, sorting them in runs of at most {@code runEntries}.
+     * Unlike {@link DomainStore#copyOf} this never holds more than one run of domains on the heap; a store of
+     * more entries than that is built in a memory-mapped file.
+     */
+    static DomainStore sort(Iterator<String> domains, Path directory, int runEntries) {
+        try (var sorter = new SpillingSorter(directory, runEntries)) {
+            domains.forEachRemaining(sorter::add);
+            var builder = sorter.newBuilder();
+            try {
+                sorter.sortedKeys().forEachRemaining(builder::addKey);
+            } catch (RuntimeException e) {
+                builder.discard();
+                throw e;
+            }
+            return builder.build();
+        }
+    }
+
+    SpillingSorter(Path directory, int runEntries) {
+        if (runEntries < 1) {
+            throw new IllegalArgumentException("Runs must hold at least one entry: " + runEntries);
+        }
+        this.directory = directory;
+        this.buffer = new String[runEntries];
+    }
+
+    void add(String domain) {
+        buffer[buffered++] = DomainStore.reverseLabels(domain);
+        if (buffered == buffer.length) {
+            spill();
+        }
+    }
+
+    int getSpilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * A builder for the sorted keys: in memory if everything fit in one run, otherwise one that spills to a file
+     * in the sort directory.
+     */
+    DomainStore.Builder newBuilder() {
+        if (runs.isEmpty()) {
+            return new DomainStore.Builder();
+        }
+        try {
+            return DomainStore.Builder.spillingTo(Files.createTempFile(directory, "entries-", ".store"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create entry store in " + directory, e);
+        }
+    }
+
+    /**
+     * Sorted, distinct keys of everything added. May only be called once.
+     */
+    Iterator<String> sortedKeys() {
+        var sorted = sortBuffer();
+        if (runs.isEmpty()) {
+            return distinct(Arrays.asList(sorted).iterator());
+        }
+        var cursors = new ArrayList<Iterator<String>>(runs.size() + 1);
+        for (var run : runs) {
+            cursors.add(run.read());
+        }
+        cursors.add(Arrays.asList(sorted).iterator());
+        return distinct(merge(cursors));
+    }
+
+    @Override
+    public void close() {
+        for (var run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private String[] sortBuffer() {
+        var sorted = Arrays.copyOf(buffer, buffered);
+        Arrays.fill(buffer, 0, buffered, null);
+        buffered = 0;
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void spill() {
+        var sorted = sortBuffer();
+        try {
+            Files.createDirectories(directory);
+            var run = new Run(Files.createTempFile(directory, "run-", ".spill"));
+            runs.add(run);
+            run.write(sorted);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Unable to spill sorted run to " + directory, e);
+        }
+    }
+
+    private static Iterator<String> merge(List<Iterator<String>> cursors) {
+        var heads = new PriorityQueue<Head>(Comparator.comparing((Head head) -> head.key));
+        for (var cursor : cursors) {
+            if (cursor.hasNext()) {
+                heads.add(new Head(cursor.next(), cursor));
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                var head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                var key = head.key;
+                if (head.cursor.hasNext()) {
+                    head.key = head.cursor.next();
+                    heads.add(head);
+                }
+                return key;
+            }
+        };
+    }
+
+    private static Iterator<String> distinct(Iterator<String> sorted) {
+        return new Iterator<>() {
+            private String next = sorted.hasNext() ? sorted.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                var current = next;
+                next = null;
+                while (sorted.hasNext()) {
+                    var candidate = sorted.next();
+                    if (!candidate.equals(current)) {
+                        next = candidate;
+                        break;
+                    }
+                }
+                return current;
+            }
+        };
+    }
+
+    private static final class Head {
+        private String key;
+        private final Iterator<String> cursor;
+
+        private Head(String key, Iterator<String> cursor) {
+            this.key = key;
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * A sorted run in a temporary file, front coded like {@link DomainStore}: the length of the prefix shared with
+     * the previous key and the remaining bytes. Runs are written and read through a {@link FileChannel} with a
+     * fixed size buffer, so merging any number of entries takes {@value #IO_BUFFER_BYTES} bytes per run.
+     */
+    private static final class Run {
+        private final Path file;
+        private long size;
+        private FileChannel reader;
+
+        private Run(Path file) {
+            this.file = file;
+        }
+
+        private void write(String[] sortedKeys) throws IOException {
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                var buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES);
+                var last = new byte[0];
+                String lastKey = null;
+                for (var key : sortedKeys) {
+                    if (key.equals(lastKey)) {
+                        continue;
+                    }
+                    var bytes = key.getBytes(StandardCharsets.UTF_8);
+                    var prefixLength = Arrays.mismatch(last, bytes);
+                    if (prefixLength < 0) {
+                        prefixLength = bytes.length;
+                    }
+                    if (buffer.remaining() < MAX_HEADER_BYTES + bytes.length - prefixLength) {
+                        flush(channel, buffer);
+                    }
+                    writeVarInt(buffer, prefixLength);
+                    writeVarInt(buffer, bytes.length - prefixLength);
+                    buffer.put(bytes, prefixLength, bytes.length - prefixLength);
+                    last = bytes;
+                    lastKey = key;
+                    size++;
+                }
+                flush(channel, buffer);
+            }
+        }
+
+        private Iterator<String> read() {
+            try {
+                reader = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            var buffer = ByteBuffer.allocateDirect(IO_BUFFER_BYTES).flip();
+            return new Iterator<>() {
+                private long remaining = size;
+                private byte[] key = new byte[256];
+
+                @Override
+                public boolean hasNext() {
+                    return remaining > 0;
+                }
+
+                @Override
+                public String next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        fill(MAX_HEADER_BYTES);
+                        var prefixLength = DomainStore.readVarInt(buffer);
+                        var suffixLength = DomainStore.readVarInt(buffer);
+                        fill(suffixLength);
+                        var length = prefixLength + suffixLength;
+                        if (length > key.length) {
+                            key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+                        }
+                        buffer.get(key, prefixLength, suffixLength);
+                        if (--remaining == 0) {
+                            reader.close();
+                        }
+                        return new String(key, 0, length, StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                /**
+                 * Makes sure the buffer holds the next {@code bytes} bytes, or everything up to the end of the run.
+                 */
+                private void fill(int bytes) throws IOException {
+                    if (buffer.remaining() >= bytes) {
+                        return;
+                    }
+                    buffer.compact();
+                    while (buffer.position() < bytes && reader.read(buffer) > 0) {
+                        // keep reading until enough bytes arrived or the file ended
+                    }
+                    buffer.flip();
+                }
+            };
+        }
+
+        private void delete() {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+
+        private static void writeVarInt(ByteBuffer buffer, int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
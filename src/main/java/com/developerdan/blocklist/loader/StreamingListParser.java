@@ -0,0 +1,137 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.BlocklistParser;
+import com.developerdan.blocklist.tools.Domain;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Parses a list while it is read, without holding all of its records. Lines are handed to the parser in chunks
+ * and the resulting domains go to a {@link SpillingSorter}; once the input ends the sorted runs are merged into a
+ * {@link DomainStore}, which is built in a memory-mapped file when the list did not fit in a single run.
+ * <p>
+ * The parsed SHA-256 is the one a parser of the list's format reports for the merged entries, see {@link ParserHash},
+ * so it is the hash a single parse of the list gives. Only that last step holds every record in memory.
+ */
+public class StreamingListParser {
+    private static final int CHUNK_LINES = 50_000;
+    private final Supplier<BlocklistParser<Domain>> parsers;
+    private final BlocklistParser<Domain> parser;
+    private final Semaphore parsePermits;
+    private final Path spillDirectory;
+    private final int runEntries;
+    private long parseNanos;
+
+    /**
+     * @param parsers new parsers of the list's format, one parses the chunks and another hashes the entries
+     */
+    public StreamingListParser(Supplier<BlocklistParser<Domain>> parsers, Semaphore parsePermits, Path spillDirectory, int runEntries) {
+        this.parsers = parsers;
+        this.parser = parsers.get();
+        this.parsePermits = parsePermits;
+        this.spillDirectory = spillDirectory;
+        this.runEntries = runEntries;
+    }
+
+    public Result parse(Stream<String> lines) {
+        try (var sorter = new SpillingSorter(spillDirectory, runEntries)) {
+            var chunk = new ArrayList<String>(CHUNK_LINES);
+            var iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == CHUNK_LINES) {
+                    parseChunk(chunk, sorter);
+                    chunk.clear();
+                }
+            }
+            parseChunk(chunk, sorter);
+            return build(sorter);
+        }
+    }
+
+    private void parseChunk(List<String> chunk, SpillingSorter sorter) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            parsePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to parse", e);
+        }
+        var started = System.nanoTime();
+        try {
+            for (var domain : parser.parseStream(chunk.stream()).getRecords()) {
+                sorter.add(domain.toString());
+            }
+        } finally {
+            parseNanos += System.nanoTime() - started;
+            parsePermits.release();
+        }
+    }
+
+    private Result build(SpillingSorter sorter) {
+        var started = System.nanoTime();
+        var builder = sorter.newBuilder();
+        try {
+            var keys = sorter.sortedKeys();
+            while (keys.hasNext()) {
+                builder.addKey(keys.next());
+            }
+        } catch (RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+        var entries = builder.build();
+        var parsedSha256 = ParserHash.of(parsers.get(), entries, entries.size()).orElse(null);
+        parseNanos += System.nanoTime() - started;
+        return new Result(parsedSha256, entries, sorter.getSpilledRuns(), parseNanos);
+    }
+
+    /**
+     * Parsed hash and entries of a list parsed by the loader.
+     */
+    public static final class Result {
+        private final String parsedSha256;
+        private final DomainStore entries;
+        private final int spilledRuns;
+        private final long parseNanos;
+
+        Result(String parsedSha256, DomainStore entries, int spilledRuns, long parseNanos) {
+            this.parsedSha256 = parsedSha256;
+            this.entries = entries;
+            this.spilledRuns = spilledRuns;
+            this.parseNanos = parseNanos;
+        }
+
+        /**
+         * The parser's hash of the entries, null if parsing them again does not give the same records.
+         */
+        public String getParsedSha256() {
+            return parsedSha256;
+        }
+
+        public DomainStore getEntries() {
+            return entries;
+        }
+
+        /**
+         * Number of sorted runs written to disk; 0 if the list was sorted in memory.
+         */
+        public int getSpilledRuns() {
+            return spilledRuns;
+        }
+
+        /**
+         * Time spent parsing, sorting and merging, without the time spent waiting for lines to be read.
+         */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+    }
+}
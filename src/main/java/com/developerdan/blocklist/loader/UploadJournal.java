@@ -0,0 +1,287 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Checkpoints the upload of a version that is not fully loaded yet, so a failed load can be resumed instead of
+ * deleted and started over. One file per blocklist starts with a header that describes the pending version,
+ * followed by a line for each entry period the API confirmed: {@code +domain} for a started period and
+ * {@code -domain} for an ended one. Lines are appended as requests complete; a line cut short by a crash is
+ * ignored when the journal is read back.
+ */
+public class UploadJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadJournal.class);
+    private static final String NONE = "none";
+    static final int HEADER_LINES = 6;
+    private final Path directory;
+
+    public UploadJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    public static UploadJournal disabled() {
+        return new UploadJournal(null);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Id of the version the blocklist's journal checkpoints, without reading the confirmed entries.
+     */
+    public Optional<UUID> pendingVersionId(UUID blocklistId) {
+        if (!isEnabled() || !Files.isRegularFile(journalFile(blocklistId))) {
+            return Optional.empty();
+        }
+        try (var lines = Files.lines(journalFile(blocklistId), StandardCharsets.UTF_8)) {
+            return lines.findFirst()
+                    .filter(line -> line.startsWith("version="))
+                    .map(line -> UUID.fromString(line.substring("version=".length())));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read upload journal of blocklist {}: {}", blocklistId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public Optional<Checkpoint> read(UUID blocklistId) {
+        if (!isEnabled() || !Files.isRegularFile(journalFile(blocklistId))) {
+            return Optional.empty();
+        }
+        var file = journalFile(blocklistId);
+        try {
+            var content = Files.readString(file, StandardCharsets.UTF_8);
+            // the last line is only complete if the journal ends with a line break
+            var lines = List.of(content.substring(0, content.lastIndexOf('\n') + 1).split("\n"));
+            if (lines.size() < HEADER_LINES) {
+                LOGGER.warn("Ignoring incomplete upload journal {}", file);
+                return Optional.empty();
+            }
+            var added = new ArrayList<String>();
+            var removed = new ArrayList<String>();
+            for (var line : lines.subList(HEADER_LINES, lines.size())) {
+                if (line.startsWith("+")) {
+                    added.add(line.substring(1));
+                } else if (line.startsWith("-")) {
+                    removed.add(line.substring(1));
+                }
+            }
+            return Optional.of(checkpoint(blocklistId, lines, DomainStore.copyOf(added.iterator()), DomainStore.copyOf(removed.iterator())));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read upload journal {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Starts a new journal for a version that was just created, replacing any previous journal of the blocklist.
+     */
+    public Writer start(Version pending, Version previousVersion) {
+        if (!isEnabled()) {
+            return new Writer(null, null);
+        }
+        var header = header(pending, previousVersion);
+        var file = journalFile(pending.getBlocklistId());
+        try {
+            Files.createDirectories(directory);
+            var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            var writer = new Writer(file, channel);
+            writer.append(header);
+            channel.force(true);
+            return writer;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to start upload journal {}, the load of version {} can not be resumed: {}", file, pending.getId(), e.getMessage());
+            return new Writer(null, null);
+        }
+    }
+
+    /**
+     * Appends to the journal a checkpoint was read from.
+     */
+    public Writer resume(Checkpoint checkpoint) {
+        if (!isEnabled()) {
+            return new Writer(null, null);
+        }
+        var file = journalFile(checkpoint.getVersion().getBlocklistId());
+        try {
+            var channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            var content = Files.readString(file, StandardCharsets.UTF_8);
+            // drop a partially written last line
+            channel.truncate(content.substring(0, content.lastIndexOf('\n') + 1).getBytes(StandardCharsets.UTF_8).length);
+            channel.position(channel.size());
+            return new Writer(file, channel);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to reopen upload journal {}: {}", file, e.getMessage());
+            return new Writer(null, null);
+        }
+    }
+
+    public void delete(UUID blocklistId) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(journalFile(blocklistId));
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete upload journal of blocklist {}: {}", blocklistId, e.getMessage());
+        }
+    }
+
+    private Path journalFile(UUID blocklistId) {
+        return directory.resolve(blocklistId + ".journal");
+    }
+
+    /**
+     * Header lines that describe a pending version and the version it is diffed against.
+     */
+    static String header(Version pending, Version previousVersion) {
+        return "version=" + pending.getId() + "\n"
+                + "previous=" + (previousVersion == null ? NONE : previousVersion.getId()) + "\n"
+                + "rawSha256=" + pending.getRawSha256() + "\n"
+                + "parsedSha256=" + pending.getParsedSha256() + "\n"
+                + "createdOn=" + pending.getCreatedOn() + "\n"
+                + "entries=" + pending.getNumEntries() + "\n";
+    }
+
+    /**
+     * Checkpoint of the version described by the first {@link #HEADER_LINES} lines.
+     */
+    static Checkpoint checkpoint(UUID blocklistId, List<String> lines, DomainStore confirmedAdded, DomainStore confirmedRemoved) {
+        var version = new Version(blocklistId, header(lines, 2, "rawSha256"), header(lines, 3, "parsedSha256"),
+                Long.parseLong(header(lines, 5, "entries")), Instant.parse(header(lines, 4, "createdOn")), false);
+        version.setId(UUID.fromString(header(lines, 0, "version")));
+        var previous = header(lines, 1, "previous");
+        return new Checkpoint(version, NONE.equals(previous) ? null : UUID.fromString(previous), confirmedAdded, confirmedRemoved);
+    }
+
+    private static String header(List<String> lines, int index, String key) {
+        var line = lines.get(index);
+        if (!line.startsWith(key + "=")) {
+            throw new IllegalArgumentException("Expected " + key + " on line " + (index + 1));
+        }
+        return line.substring(key.length() + 1);
+    }
+
+    /**
+     * A pending version and the entry periods that were confirmed for it before the load stopped.
+     */
+    public static final class Checkpoint {
+        private final Version version;
+        private final UUID previousVersionId;
+        private final DomainStore confirmedAdded;
+        private final DomainStore confirmedRemoved;
+
+        private Checkpoint(Version version, UUID previousVersionId, DomainStore confirmedAdded, DomainStore confirmedRemoved) {
+            this.version = version;
+            this.previousVersionId = previousVersionId;
+            this.confirmedAdded = confirmedAdded;
+            this.confirmedRemoved = confirmedRemoved;
+        }
+
+        /**
+         * Whether the checkpointed upload is a diff of the same entries against the same previous version.
+         */
+        public boolean resumes(Version previousVersion, PreparedList prepared) {
+            var previousId = previousVersion == null ? null : previousVersion.getId();
+            return Objects.equals(previousVersionId, previousId)
+                    && prepared.getParsedSha256().equalsIgnoreCase(String.valueOf(version.getParsedSha256()));
+        }
+
+        public Version getVersion() {
+            return version;
+        }
+
+        public DomainStore getConfirmedAdded() {
+            return confirmedAdded;
+        }
+
+        public DomainStore getConfirmedRemoved() {
+            return confirmedRemoved;
+        }
+    }
+
+    /**
+     * Appends confirmed entry periods. Safe to call from the threads that complete API requests; writes are
+     * serialized with a lock rather than a monitor, so a virtual thread blocked on the file does not pin its carrier.
+     * A writer for a disabled or unwritable journal ignores everything.
+     */
+    public static final class Writer implements Closeable {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Path file;
+        private final FileChannel channel;
+
+        private Writer(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        public void started(List<String> domains) {
+            append(domains, '+');
+        }
+
+        public void ended(List<String> domains) {
+            append(domains, '-');
+        }
+
+        private void append(List<String> domains, char operation) {
+            if (channel == null) {
+                return;
+            }
+            var lines = new StringBuilder(domains.size() * 24);
+            for (var domain : domains) {
+                lines.append(operation).append(domain).append('\n');
+            }
+            append(lines.toString());
+        }
+
+        private void append(String lines) {
+            var buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+            lock.lock();
+            try {
+                if (channel == null || !channel.isOpen()) {
+                    return;
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Unable to append to upload journal {}: {}", file, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            lock.lock();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close upload journal {}: {}", file, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -20,10 +20,14 @@ public class Version {
     }
 
     public Version(UUID blocklistId, ParsedList parsedList, Instant createdOn, boolean isFullyLoaded) {
+        this(blocklistId, parsedList.getOriginalSha(), parsedList.getParsedSha(), parsedList.getRecords().size(), createdOn, isFullyLoaded);
+    }
+
+    public Version(UUID blocklistId, String rawSha256, String parsedSha256, long numEntries, Instant createdOn, boolean isFullyLoaded) {
         this.blocklistId = blocklistId;
-        this.rawSha256 = parsedList.getOriginalSha();
-        this.parsedSha256 = parsedList.getParsedSha();
-        this.numEntries = parsedList.getRecords().size();
+        this.rawSha256 = rawSha256;
+        this.parsedSha256 = parsedSha256;
+        this.numEntries = numEntries;
         this.createdOn = createdOn;
         this.lastSeen = createdOn;
         this.isFullyLoaded = isFullyLoaded;
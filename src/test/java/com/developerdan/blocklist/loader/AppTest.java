@@ -0,0 +1,387 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppTest {
+    private static final Instant CREATED_ON = Instant.ofEpochSecond(1_600_000_000L);
+    private StubBlocklistApi api;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = new StubBlocklistApi();
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.close();
+    }
+
+    @Test
+    void unchangedParsedHashOnlyUpdatesLastSeen() {
+        var domains = domains("same", 1000);
+        api.addVersion(domains, parsedSha(domains), CREATED_ON);
+        api.upstream(domains);
+        App.initialize(new StubConfiguration(api.baseUrl()));
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("getVersions")).isEqualTo(1);
+        assertThat(api.requests("updateVersion")).isEqualTo(1);
+        assertThat(api.requests("getFullList") + api.requests("createVersion") + api.requests("deleteVersion")).isZero();
+        assertThat(api.requests("bulkStart") + api.requests("bulkEnd")).isZero();
+        assertThat(api.versions()).hasSize(1);
+        assertThat(api.versions().get(0).getLastSeen()).isEqualTo(CREATED_ON.plusSeconds(3600));
+    }
+
+    @Test
+    void changedParsedHashLoadsANewVersion() {
+        var previous = domains("same", 1000);
+        var current = new ArrayList<>(previous.subList(10, 1000));
+        current.add("added.example.com");
+        api.addVersion(previous, parsedSha(previous), CREATED_ON);
+        api.upstream(current);
+        App.initialize(new StubConfiguration(api.baseUrl()));
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("getFullList")).isEqualTo(1);
+        assertThat(api.requests("createVersion")).isEqualTo(1);
+        assertThat(api.requests("bulkStart")).isEqualTo(1);
+        assertThat(api.requests("bulkEnd")).isEqualTo(1);
+        var created = api.versions().get(0);
+        assertThat(created.isFullyLoaded()).isTrue();
+        assertThat(created.getParsedSha256()).isEqualTo(parsedSha(current));
+        assertThat(created.getRawSha256()).isEqualTo(App.getParser("domain").parseUrl(api.upstreamUrl()).getOriginalSha());
+        assertThat(api.started(created.getId())).containsExactly("added.example.com");
+        assertThat(api.ended(api.versions().get(1).getId())).containsExactlyInAnyOrder(previous.subList(0, 10).toArray(new String[0]));
+    }
+
+    @Test
+    void firstLoadKeepsTheParserHashBelowTheExternalSortThreshold() {
+        var domains = domains("first", 1000);
+        api.upstream(domains);
+        App.initialize(externalSortAbove(1000));
+
+        assertThat(parseList()).isTrue();
+
+        var created = api.versions().get(0);
+        assertThat(created.getParsedSha256()).isEqualTo(parsedSha(domains));
+        assertThat(api.started(created.getId())).hasSize(1000);
+    }
+
+    @Test
+    void firstLoadAboveTheExternalSortThresholdIsSortedOnDisk() {
+        var domains = zoneDomains(1000);
+        api.upstream(domains);
+        App.initialize(externalSortAbove(999));
+
+        assertThat(parseList()).isTrue();
+
+        var created = api.versions().get(0);
+        assertThat(created.isFullyLoaded()).isTrue();
+        assertThat(created.getParsedSha256()).isEqualTo(parsedSha(domains));
+        assertThat(api.started(created.getId())).containsExactlyInAnyOrder(domains.toArray(new String[0]));
+    }
+
+    @Test
+    void identicalListStaysUnchangedAcrossTheExternalSortThreshold() {
+        var domains = zoneDomains(1000);
+        api.addVersion(domains, parsedSha(domains), CREATED_ON);
+        api.upstream(domains);
+
+        App.initialize(externalSortAbove(999));
+        assertThat(parseList()).isTrue();
+        App.initialize(externalSortAbove(0));
+        assertThat(App.parseList("test", App.getParser("domain"), api.upstreamUrl(), api.blocklistId, CREATED_ON.plusSeconds(7200), false)).isTrue();
+
+        assertThat(api.requests("createVersion") + api.requests("getFullList")).isZero();
+        assertThat(api.versions()).hasSize(1);
+        assertThat(api.versions().get(0).getLastSeen()).isEqualTo(CREATED_ON.plusSeconds(7200));
+    }
+
+    @Test
+    void listParsedWhileItDownloadsKeepsTheParserHash() {
+        var previous = zoneDomains(1000);
+        api.addVersion(previous, parsedSha(previous), CREATED_ON);
+        api.upstream(previous);
+        App.initialize(new StubConfiguration(api.baseUrl()) {
+            @Override
+            public boolean streamingParse() {
+                return true;
+            }
+        });
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("createVersion") + api.requests("getFullList")).isZero();
+        assertThat(api.versions()).hasSize(1);
+        assertThat(api.versions().get(0).getLastSeen()).isEqualTo(CREATED_ON.plusSeconds(3600));
+    }
+
+    @Test
+    void unchangedListKeepsTheCheckpointOfAnotherLoad(@TempDir Path cacheDirectory) {
+        var domains = domains("same", 1000);
+        var previous = api.addVersion(domains, parsedSha(domains), CREATED_ON);
+        var partial = api.addVersion(domains("other", 10), "other", CREATED_ON.plusSeconds(60));
+        partial.setFullyLoaded(false);
+        new UploadJournal(cacheDirectory.resolve("journal")).start(partial, previous).close();
+        api.upstream(domains);
+        App.initialize(withJournalIn(cacheDirectory));
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("deleteVersion") + api.requests("createVersion")).isZero();
+        assertThat(new UploadJournal(cacheDirectory.resolve("journal")).pendingVersionId(api.blocklistId)).contains(partial.getId());
+    }
+
+    @Test
+    void failedUploadJournalsTheRequestsStillInFlight(@TempDir Path cacheDirectory) {
+        var bulkRequests = new AtomicInteger();
+        var accepted = ConcurrentHashMap.<String>newKeySet();
+        // the first batch is rejected at once, the others are accepted while the load gives up
+        api.server.on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart", request -> {
+            if (bulkRequests.getAndIncrement() == 0) {
+                return StubServer.Response.of(400);
+            }
+            pause(300);
+            accepted.addAll(request.bodyText().lines().toList());
+            return StubServer.Response.of(201);
+        });
+        api.upstream(domains("added", 200));
+        App.initialize(new StubConfiguration(api.baseUrl()) {
+            @Override
+            public Optional<Path> cacheDirectory() {
+                return Optional.of(cacheDirectory);
+            }
+
+            @Override
+            public boolean entryPeriodQueue() {
+                return false;
+            }
+
+            @Override
+            public int bulkBatchSize() {
+                return 10;
+            }
+
+            @Override
+            public int requestWindowInitial() {
+                return 2;
+            }
+
+            @Override
+            public int requestWindowMin() {
+                return 2;
+            }
+
+            @Override
+            public int requestWindowMax() {
+                return 2;
+            }
+        });
+
+        assertThat(parseList()).isFalse();
+        // anything still unanswered would be accepted by now
+        pause(600);
+
+        var confirmed = new UploadJournal(cacheDirectory.resolve("journal")).read(api.blocklistId).orElseThrow().getConfirmedAdded();
+        assertThat(accepted).isNotEmpty();
+        assertThat(confirmed).containsExactlyInAnyOrder(accepted.toArray(new String[0]));
+    }
+
+    @Test
+    void previousEntriesAreRebuiltFromTheSnapshotAndChanges(@TempDir Path cacheDirectory) {
+        var oldest = domains("same", 1000);
+        var previous = new ArrayList<>(oldest.subList(5, 1000));
+        previous.add("previous.example.com");
+        var current = new ArrayList<>(previous.subList(5, previous.size()));
+        current.add("current.example.com");
+        var snapshotted = api.addVersion(oldest, parsedSha(oldest), CREATED_ON.minusSeconds(3600));
+        api.addVersion(previous, parsedSha(previous), CREATED_ON);
+        new SnapshotCache(cacheDirectory.resolve("snapshots")).write(snapshotted, DomainStore.copyOf(oldest.iterator()));
+        api.upstream(current);
+        App.initialize(cachingIn(cacheDirectory));
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("getEntryChanges")).isEqualTo(1);
+        assertThat(api.requests("getFullList")).isZero();
+        var created = api.versions().get(0);
+        assertThat(api.started(created.getId())).containsExactly("current.example.com");
+        assertThat(api.ended(api.versions().get(1).getId())).containsExactlyInAnyOrder(previous.subList(0, 5).toArray(new String[0]));
+    }
+
+    @Test
+    void snapshotThatDoesNotGiveTheParsedHashFallsBackToAFullLoad(@TempDir Path cacheDirectory) {
+        var oldest = domains("same", 1000);
+        var previous = new ArrayList<>(oldest.subList(5, 1000));
+        previous.add("previous.example.com");
+        var current = new ArrayList<>(previous.subList(5, previous.size()));
+        current.add("current.example.com");
+        var snapshotted = api.addVersion(oldest, parsedSha(oldest), CREATED_ON.minusSeconds(3600));
+        api.addVersion(previous, parsedSha(previous), CREATED_ON);
+        // a stale snapshot that has the removed entries: the changes apply and give the right size, but wrong entries
+        var stale = new ArrayList<>(oldest.subList(0, 5));
+        stale.addAll(domains("stale", 995));
+        new SnapshotCache(cacheDirectory.resolve("snapshots")).write(snapshotted, DomainStore.copyOf(stale.iterator()));
+        api.upstream(current);
+        App.initialize(cachingIn(cacheDirectory));
+
+        assertThat(parseList()).isTrue();
+
+        assertThat(api.requests("getEntryChanges")).isEqualTo(1);
+        assertThat(api.requests("getFullList")).isEqualTo(1);
+        var created = api.versions().get(0);
+        assertThat(api.started(created.getId())).containsExactly("current.example.com");
+        assertThat(api.ended(api.versions().get(1).getId())).containsExactlyInAnyOrder(previous.subList(0, 5).toArray(new String[0]));
+    }
+
+    @Test
+    void dictionaryDiffsStayCorrectWhenTheDictionaryIsReplaced() {
+        var previous = domains("same", 1000);
+        var current = new ArrayList<>(previous.subList(10, 1000));
+        current.add("added.example.com");
+        api.addVersion(previous, parsedSha(previous), CREATED_ON);
+        api.upstream(current);
+        App.initialize(new StubConfiguration(api.baseUrl()) {
+            @Override
+            public boolean domainDictionary() {
+                return true;
+            }
+
+            @Override
+            public int domainDictionaryMaxDomains() {
+                return 100;
+            }
+        });
+
+        assertThat(parseList()).isTrue();
+        var first = api.versions().get(0);
+        assertThat(api.started(first.getId())).containsExactly("added.example.com");
+        assertThat(api.ended(api.versions().get(1).getId())).containsExactlyInAnyOrder(previous.subList(0, 10).toArray(new String[0]));
+
+        // the stub only serves the entries of versions added to it, so the next load diffs against this one
+        var loaded = api.addVersion(current, parsedSha(current), CREATED_ON.plusSeconds(3600));
+        var next = new ArrayList<>(current.subList(0, 990));
+        next.add("next.example.com");
+        api.upstream(next);
+        assertThat(App.parseList("test", App.getParser("domain"), api.upstreamUrl(), api.blocklistId, CREATED_ON.plusSeconds(7200), false)).isTrue();
+
+        var second = api.versions().get(0);
+        assertThat(api.started(second.getId())).containsExactly("next.example.com");
+        assertThat(api.ended(loaded.getId())).containsExactly("added.example.com");
+    }
+
+    @Test
+    void daemonLoadsTheCatalogAgainAfterAFailureAndStopsWhenAsked() throws InterruptedException {
+        var domains = domains("daemon", 100);
+        api.upstream(domains);
+        // both attempts of the first catalog request
+        api.failCatalog(2);
+        App.initialize(new StubConfiguration(api.baseUrl()) {
+            @Override
+            public Duration catalogRefreshInterval() {
+                return Duration.ofMillis(200);
+            }
+        });
+        var stop = new CountDownLatch(1);
+        var daemon = new Thread(() -> App.runDaemon(stop));
+        daemon.start();
+        var deadline = Instant.now().plusSeconds(10);
+        while (api.versions().stream().noneMatch(Version::isFullyLoaded) && Instant.now().isBefore(deadline)) {
+            Thread.sleep(10);
+        }
+        stop.countDown();
+        daemon.join(5000);
+
+        assertThat(daemon.isAlive()).isFalse();
+        // two failed requests, then the two pages of the catalog
+        assertThat(api.requests("getLists")).isGreaterThanOrEqualTo(4);
+        assertThat(api.requests("createVersion")).isEqualTo(1);
+        assertThat(api.started(api.versions().get(0).getId())).containsExactlyInAnyOrder(domains.toArray(new String[0]));
+    }
+
+    private Configuration cachingIn(Path cacheDirectory) {
+        return new StubConfiguration(api.baseUrl()) {
+            @Override
+            public Optional<Path> cacheDirectory() {
+                return Optional.of(cacheDirectory);
+            }
+        };
+    }
+
+    private Configuration withJournalIn(Path cacheDirectory) {
+        return new StubConfiguration(api.baseUrl()) {
+            @Override
+            public Optional<Path> cacheDirectory() {
+                return Optional.of(cacheDirectory);
+            }
+
+            @Override
+            public boolean entryPeriodQueue() {
+                return false;
+            }
+        };
+    }
+
+    private Configuration externalSortAbove(int threshold) {
+        return new StubConfiguration(api.baseUrl()) {
+            @Override
+            public int externalSortThreshold() {
+                return threshold;
+            }
+        };
+    }
+
+    private boolean parseList() {
+        return App.parseList("test", App.getParser("domain"), api.upstreamUrl(), api.blocklistId, CREATED_ON.plusSeconds(3600), false);
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String parsedSha(List<String> domains) {
+        return App.getParser("domain").parseStream(domains.stream()).getParsedSha();
+    }
+
+    /**
+     * Domains spread over several parent domains, so their order on disk differs from the parser's.
+     */
+    static List<String> zoneDomains(int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add("host" + i + ".zone" + (i % 7) + ".example.com");
+        }
+        return domains;
+    }
+
+    static List<String> domains(String prefix, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add(prefix + i + ".example.com");
+        }
+        return domains;
+    }
+}
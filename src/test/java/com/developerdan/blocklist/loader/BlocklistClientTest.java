@@ -0,0 +1,154 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import com.developerdan.blocklist.tools.Domain;
+import com.developerdan.blocklist.tools.DomainListParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BlocklistClientTest {
+    private static final Instant CREATED_ON = Instant.ofEpochSecond(1_600_000_000L);
+    private StubBlocklistApi api;
+    private BlocklistClient client;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = new StubBlocklistApi();
+        client = new BlocklistClient(new StubConfiguration(api.baseUrl()));
+    }
+
+    @AfterEach
+    void stopApi() {
+        client.close();
+        api.close();
+    }
+
+    @Test
+    void onlyRequestsWithDecodedResponsesAcceptGzip() {
+        var previous = api.addVersion(List.of("a.example.com"), "sha", CREATED_ON);
+        try (var versions = client.getVersions(api.blocklistId)) {
+            assertThat(versions.count()).isEqualTo(1L);
+        }
+        assertThat(client.getFullList(previous).size()).isEqualTo(1);
+        var created = client.createVersion(new Version(api.blocklistId, "raw", "sha2", 1, CREATED_ON, false));
+        client.updateVersion(created);
+        client.startEntryPeriod(created, "b.example.com").join();
+        client.endEntryPeriod(previous, "a.example.com").join();
+        client.startEntryPeriods(created, List.of("c.example.com")).join();
+        client.deleteVersion(created);
+
+        assertThat(acceptEncoding("getVersions")).isEqualTo("gzip");
+        assertThat(acceptEncoding("getFullList")).isEqualTo("gzip");
+        for (var route : List.of("createVersion", "updateVersion", "start", "end", "bulkStart", "deleteVersion")) {
+            assertThat(acceptEncoding(route)).isNull();
+        }
+    }
+
+    @Test
+    void unexpectedStatusOfAStreamedResponseIsReported() throws IOException {
+        try (var server = new StubServer().on("GET", "/blocklists/[^/]+/versions", "getVersions", request -> StubServer.Response.of(202, "[]"))) {
+            var accepting = new BlocklistClient(new StubConfiguration(server.baseUrl()));
+
+            assertThatThrownBy(() -> accepting.getVersions(api.blocklistId))
+                    .hasRootCauseInstanceOf(ApiException.class)
+                    .hasMessageContaining("202");
+        }
+    }
+
+    @Test
+    void bulkRequestNotFoundFailsWithoutTurningBulkRequestsOff() throws IOException {
+        var bulkStatus = new AtomicInteger(404);
+        try (var server = new StubServer().on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart",
+                request -> StubServer.Response.of(bulkStatus.get()))) {
+            var bulk = new BlocklistClient(new StubConfiguration(server.baseUrl()));
+            var version = new Version(api.blocklistId, "raw", "sha", 1, CREATED_ON, false);
+
+            assertThatThrownBy(() -> bulk.startEntryPeriods(version, List.of("a.example.com")).join())
+                    .hasRootCauseInstanceOf(ApiException.class)
+                    .hasMessageContaining("404");
+            assertThat(bulk.isBulkEntryPeriodsSupported()).isTrue();
+
+            bulkStatus.set(201);
+            assertThat(bulk.startEntryPeriods(version, List.of("a.example.com")).join()).isTrue();
+
+            bulkStatus.set(405);
+            assertThat(bulk.startEntryPeriods(version, List.of("a.example.com")).join()).isFalse();
+            assertThat(bulk.isBulkEntryPeriodsSupported()).isFalse();
+        }
+    }
+
+    @Test
+    void unknownVersionFallsBackForThatVersionOnly() throws IOException {
+        var changesStatus = new AtomicInteger(404);
+        try (var server = new StubServer().on("GET", "/versions/[^/]+/entries/changes", "getEntryChanges",
+                request -> changesStatus.get() == 200 ? StubServer.Response.of(200, "+b.example.com\n-a.example.com") : StubServer.Response.of(changesStatus.get()))) {
+            var delta = new BlocklistClient(new StubConfiguration(server.baseUrl()));
+            var version = new Version(api.blocklistId, "raw", "sha", 1, CREATED_ON, true);
+
+            assertThat(delta.getEntryChanges(version, UUID.randomUUID())).isEmpty();
+
+            changesStatus.set(200);
+            var changes = delta.getEntryChanges(version, UUID.randomUUID()).orElseThrow();
+            assertThat(changes.getAdded()).containsExactly("b.example.com");
+            assertThat(changes.getRemoved()).containsExactly("a.example.com");
+
+            changesStatus.set(501);
+            assertThat(delta.getEntryChanges(version, UUID.randomUUID())).isEmpty();
+            assertThat(delta.getEntryChanges(version, UUID.randomUUID())).isEmpty();
+            assertThat(server.requests("getEntryChanges")).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void entryPeriodThatAlreadyExistsCountsAsSent() throws IOException {
+        var attempts = new AtomicInteger();
+        // the first attempt reaches the API but fails, so the retry finds the period in place
+        try (var server = new StubServer()
+                .on("POST", "/blocklists/[^/]+/versions/[^/]+/entries", "start",
+                        request -> attempts.getAndIncrement() == 0 ? StubServer.Response.of(503) : StubServer.Response.of(409, "Entry period already exists"))
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries", "end",
+                        request -> StubServer.Response.of(400, "Entry period for domain already exists"))) {
+            var retrying = new BlocklistClient(new StubConfiguration(server.baseUrl()));
+            var version = new Version(api.blocklistId, "raw", "sha", 1, CREATED_ON, false);
+
+            assertThat(retrying.startEntryPeriod(version, "a.example.com").join()).isTrue();
+            assertThat(retrying.endEntryPeriod(version, "b.example.com").join()).isTrue();
+            assertThat(server.requests("start")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void previousEntriesAreTheDomainsTheListParserReads() {
+        var lines = new ArrayList<String>();
+        lines.add("# previous entries");
+        lines.add("");
+        lines.add("Upper.Example.COM");
+        lines.add("trailing.example.com.");
+        lines.add("inline.example.com # comment");
+        lines.add("  padded.example.com  ");
+        for (var i = 0; i < 60_000; i++) {
+            lines.add("host" + i + ".zone" + (i % 7) + ".example.net");
+        }
+        var previous = api.addVersion(lines, "sha", CREATED_ON);
+        var expected = new DomainListParser().parseStream(lines.stream()).getRecords();
+
+        var entries = client.getFullList(previous);
+
+        assertThat(entries).containsExactlyElementsOf(DomainStore.copyOf(expected, Domain::toString));
+    }
+
+    private String acceptEncoding(String route) {
+        return api.server.lastRequest(route).orElseThrow().header("Accept-Encoding").orElse(null);
+    }
+}
@@ -0,0 +1,103 @@
+package com.developerdan.blocklist.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DomainIdSetTest {
+
+    @Test
+    void diffsLikeTheirDomainStores() {
+        var random = new Random(21);
+        var dictionary = new DomainDictionary();
+        for (var round = 0; round < 20; round++) {
+            var previous = DomainStore.copyOf(sample(random, 500).iterator());
+            var current = DomainStore.copyOf(sample(random, 500).iterator());
+            var fromStores = new Changes();
+            var fromIds = new Changes();
+
+            DomainStore.diff(previous, current, fromStores);
+            DomainIdSet.diff(DomainIdSet.of(previous, dictionary), DomainIdSet.of(current, dictionary), fromIds);
+
+            assertThat(fromIds.added).isEqualTo(fromStores.added);
+            assertThat(fromIds.removed).isEqualTo(fromStores.removed);
+            assertThat(fromIds.unchanged).isEqualTo(fromStores.unchanged);
+        }
+    }
+
+    @Test
+    void listsInternedAtTheSameTimeShareIds() {
+        var dictionary = new DomainDictionary();
+        var random = new Random(5);
+        var stores = new ArrayList<DomainStore>();
+        var distinct = new HashSet<String>();
+        for (var i = 0; i < 8; i++) {
+            var domains = sample(random, 20_000);
+            distinct.addAll(domains);
+            stores.add(DomainStore.copyOf(domains.iterator()));
+        }
+        var executor = Executors.newFixedThreadPool(stores.size());
+        try {
+            var sets = stores.stream()
+                    .map(store -> CompletableFuture.supplyAsync(() -> DomainIdSet.of(store, dictionary), executor))
+                    .toList();
+            CompletableFuture.allOf(sets.toArray(new CompletableFuture<?>[0])).join();
+
+            assertThat(dictionary.size()).isEqualTo(distinct.size());
+            for (var i = 0; i < stores.size(); i++) {
+                var changes = new Changes();
+                DomainIdSet.diff(sets.get(i).join(), DomainIdSet.of(stores.get(i), dictionary), changes);
+                assertThat(changes.added).isEmpty();
+                assertThat(changes.removed).isEmpty();
+                assertThat(changes.unchanged).isEqualTo((long) stores.get(i).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Domains drawn from a small pool, so samples overlap.
+     */
+    private static List<String> sample(Random random, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add("host" + random.nextInt(count * 2) + ".zone" + random.nextInt(16) + ".example.com");
+        }
+        return domains;
+    }
+
+    private static final class Changes implements SortedDiff.Sink<String> {
+        private final Set<String> added = new HashSet<>();
+        private final Set<String> removed = new HashSet<>();
+        private long unchanged;
+
+        @Override
+        public void added(String entry) {
+            added.add(entry);
+        }
+
+        @Override
+        public void removed(String entry) {
+            removed.add(entry);
+        }
+
+        @Override
+        public void unchanged(String entry) {
+            unchanged++;
+        }
+
+        @Override
+        public void unchangedCount(long count) {
+            unchanged += count;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.developerdan.blocklist.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DomainStoreTest {
+    private static final List<String> EDGE_CASES = List.of("", ".", "a", "a.", ".a", "a..b", "com", "a.com", "b.a.com",
+            "a.b.com", "ab.com", "a-b.com", "ads.example.com", "example.com", "example.co.uk", "xn--bcher-kva.example");
+
+    @Test
+    void comparatorOrdersLikeTheReversedLabels() {
+        var domains = new ArrayList<>(EDGE_CASES);
+        domains.addAll(randomDomains(new Random(5), 500));
+        for (var left : domains) {
+            for (var right : domains) {
+                var expected = Integer.signum(DomainStore.reverseLabels(left).compareTo(DomainStore.reverseLabels(right)));
+                assertThat(Integer.signum(DomainStore.COMPARATOR.compare(left, right))).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void copiesOfACollectionAndOfAnIteratorAreTheSame() {
+        var domains = randomDomains(new Random(7), 20_000);
+        var expected = new TreeSet<>(DomainStore.COMPARATOR);
+        expected.addAll(domains);
+
+        var fromCollection = DomainStore.copyOf(domains, domain -> domain);
+        var fromIterator = DomainStore.copyOf(domains.iterator());
+
+        assertThat(fromCollection).containsExactlyElementsOf(expected);
+        assertThat(fromIterator).containsExactlyElementsOf(expected);
+        assertThat(fromCollection.size()).isEqualTo(expected.size());
+    }
+
+    @Test
+    void containsExactlyItsEntries() {
+        var random = new Random(9);
+        var domains = randomDomains(random, 5_000);
+        var store = DomainStore.copyOf(domains.subList(0, 2_500), domain -> domain);
+        var included = new TreeSet<>(domains.subList(0, 2_500));
+        for (var domain : domains) {
+            assertThat(store.contains(domain)).isEqualTo(included.contains(domain));
+        }
+    }
+
+    @Test
+    void patchAddsAndRemovesEntries() {
+        var store = DomainStore.copyOf(List.of("a.com", "b.com", "c.com").iterator());
+        var patched = store.patch(DomainStore.copyOf(List.of("d.com", "b.com").iterator()), DomainStore.copyOf(List.of("a.com").iterator()));
+
+        assertThat(patched).containsExactly("b.com", "c.com", "d.com");
+    }
+
+    private static List<String> randomDomains(Random random, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            var labels = 1 + random.nextInt(4);
+            var domain = new StringBuilder();
+            for (var label = 0; label < labels; label++) {
+                if (label > 0) {
+                    domain.append('.');
+                }
+                domain.append((char) ('a' + random.nextInt(3))).append(random.nextInt(20));
+            }
+            domains.add(domain.append(random.nextBoolean() ? ".com" : ".net").toString());
+        }
+        return domains;
+    }
+}
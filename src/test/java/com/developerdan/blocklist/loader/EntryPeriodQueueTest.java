@@ -0,0 +1,110 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EntryPeriodQueueTest {
+    private final UUID blocklistId = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendWaitsWhileTooMuchIsUnacknowledged() throws Exception {
+        var queue = new EntryPeriodQueue(directory, 256);
+        var domains = domains(100);
+        try (var segment = queue.start(version(), version())) {
+            var appending = appendAll(segment, domains);
+
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertThat(appending.isDone()).isFalse();
+
+            assertThat(drain(segment)).containsExactlyElementsOf(domains);
+            appending.get(10, TimeUnit.SECONDS);
+            assertThat(segment.isAcknowledged()).isTrue();
+        }
+    }
+
+    @Test
+    void appendFailsOnceDrainingIsAbandoned() throws InterruptedException {
+        var queue = new EntryPeriodQueue(directory, 16);
+        try (var segment = queue.start(version(), version())) {
+            segment.append('+', "first.example.com");
+            segment.abandon();
+
+            assertThatThrownBy(() -> segment.append('+', "second.example.com"))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    /**
+     * Spans several chunks while the drain maps and releases them alongside the appending thread.
+     */
+    @Test
+    void drainingAlongsideAppendsAcrossChunksKeepsEveryOperation() throws Exception {
+        var queue = new EntryPeriodQueue(directory, 1 << 20);
+        var domains = domains(1_000_000);
+        try (var segment = queue.start(version(), version())) {
+            var appending = appendAll(segment, domains);
+
+            assertThat(drain(segment)).containsExactlyElementsOf(domains);
+            appending.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(queue.read(blocklistId).orElseThrow().getConfirmedAdded().size()).isEqualTo(domains.size());
+    }
+
+    private static CompletableFuture<Void> appendAll(EntryPeriodQueue.Segment segment, List<String> domains) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                for (var domain : domains) {
+                    segment.append('+', domain);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            segment.seal();
+        });
+    }
+
+    /**
+     * Drains the segment until it is sealed and empty, acknowledging every batch.
+     */
+    private static List<String> drain(EntryPeriodQueue.Segment segment) throws InterruptedException {
+        var drained = new ArrayList<String>();
+        var position = segment.getAcknowledged();
+        for (var batch = segment.next(position, 1000); batch != null; batch = segment.next(position, 1000)) {
+            drained.addAll(batch.getStarted());
+            position = batch.getTo();
+            segment.acknowledge(batch);
+        }
+        return drained;
+    }
+
+    private static List<String> domains(int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add("queued" + i + ".example.com");
+        }
+        return domains;
+    }
+
+    private Version version() {
+        var version = new Version(blocklistId, "raw", "parsed", 0, Instant.ofEpochSecond(1_600_000_000L), false);
+        version.setId(UUID.randomUUID());
+        return version;
+    }
+}
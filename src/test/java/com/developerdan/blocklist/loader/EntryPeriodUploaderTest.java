@@ -0,0 +1,188 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EntryPeriodUploaderTest {
+    private static final int ADDED = 1000;
+    private static final int REMOVED = 500;
+    private static final int BATCH_SIZE = 100;
+    private static final int WINDOW = 4;
+
+    @TempDir
+    Path directory;
+
+    private final Set<String> started = ConcurrentHashMap.newKeySet();
+    private final Set<String> ended = ConcurrentHashMap.newKeySet();
+    private final UUID blocklistId = UUID.randomUUID();
+    private final Version previousVersion = version();
+    private final Version currentVersion = version();
+    private StubServer server;
+    private volatile long singleRequestMillis;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new StubServer()
+                .on("POST", "/blocklists/[^/]+/versions/[^/]+/entries", "start", request -> {
+                    started.add(request.bodyText());
+                    pause(singleRequestMillis);
+                    return StubServer.Response.of(201);
+                })
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries", "end", request -> {
+                    ended.add(request.bodyText());
+                    pause(singleRequestMillis);
+                    return StubServer.Response.of(201);
+                });
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void bulkRequestsSendABatchPerRoundTrip() {
+        server.on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart", request -> {
+                    started.addAll(request.bodyText().lines().toList());
+                    return StubServer.Response.of(201);
+                })
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkEnd", request -> {
+                    ended.addAll(request.bodyText().lines().toList());
+                    return StubServer.Response.of(200);
+                });
+
+        upload(new BlocklistClient(new StubConfiguration(server.baseUrl())), null);
+
+        assertThat(server.requests("bulkStart")).isEqualTo(ADDED / BATCH_SIZE);
+        assertThat(server.requests("bulkEnd")).isEqualTo(REMOVED / BATCH_SIZE);
+        assertThat(server.requests("start") + server.requests("end")).isZero();
+        assertAllSent();
+    }
+
+    @Test
+    void withoutBulkRequestsEveryDomainIsARoundTrip() {
+        var client = new BlocklistClient(new StubConfiguration(server.baseUrl()) {
+            @Override
+            public boolean bulkEntryPeriods() {
+                return false;
+            }
+        });
+
+        upload(client, null);
+
+        assertThat(server.requests("start")).isEqualTo(ADDED);
+        assertThat(server.requests("end")).isEqualTo(REMOVED);
+        assertAllSent();
+    }
+
+    @Test
+    void unsupportedBulkFallsBackToSingleRequestsWithinTheWindow() {
+        rejectBulkRequests();
+
+        upload(new BlocklistClient(new StubConfiguration(server.baseUrl())), null);
+
+        assertThat(server.requests("start")).isEqualTo(ADDED);
+        assertThat(server.requests("end")).isEqualTo(REMOVED);
+        assertThat(server.maxInFlight()).isLessThanOrEqualTo(WINDOW);
+        assertAllSent();
+        var checkpoint = new UploadJournal(directory).read(blocklistId).orElseThrow();
+        assertThat(checkpoint.getConfirmedAdded().size()).isEqualTo(ADDED);
+        assertThat(checkpoint.getConfirmedRemoved().size()).isEqualTo(REMOVED);
+    }
+
+    @Test
+    void unsupportedBulkFallsBackWhileDrainingTheQueue() {
+        rejectBulkRequests();
+        var segment = new EntryPeriodQueue(directory.resolve("queue")).start(currentVersion, previousVersion);
+        try {
+            upload(new BlocklistClient(new StubConfiguration(server.baseUrl())), segment);
+
+            assertThat(segment.isAcknowledged()).isTrue();
+        } finally {
+            segment.close();
+        }
+        assertThat(server.maxInFlight()).isLessThanOrEqualTo(WINDOW);
+        assertAllSent();
+    }
+
+    @Test
+    void failedDrainFailsTheDiffWaitingForTheQueue() {
+        server.on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart", request -> StubServer.Response.of(400))
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkEnd", request -> StubServer.Response.of(400));
+        var segment = new EntryPeriodQueue(directory.resolve("queue"), 64).start(currentVersion, previousVersion);
+        try {
+            assertThatThrownBy(() -> upload(new BlocklistClient(new StubConfiguration(server.baseUrl())), segment))
+                    .isInstanceOf(ApiException.class)
+                    .hasMessageContaining("400");
+        } finally {
+            segment.close();
+        }
+    }
+
+    /**
+     * Rejects bulk requests as unsupported and slows single requests down enough that they overlap unless the
+     * window holds them back.
+     */
+    private void rejectBulkRequests() {
+        singleRequestMillis = 5;
+        server.on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart", request -> StubServer.Response.of(405))
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkEnd", request -> StubServer.Response.of(405));
+    }
+
+    private void upload(BlocklistClient client, EntryPeriodQueue.Segment segment) {
+        var window = new RequestWindow(WINDOW, WINDOW, WINDOW, Duration.ofSeconds(10));
+        try (var journal = new UploadJournal(directory).start(currentVersion, previousVersion)) {
+            var uploader = new EntryPeriodUploader(client, window.newTracker(), previousVersion, currentVersion, BATCH_SIZE, journal, null, segment);
+            for (var domain : domains("added", ADDED)) {
+                uploader.added(domain);
+            }
+            for (var domain : domains("removed", REMOVED)) {
+                uploader.removed(domain);
+            }
+            uploader.finish();
+        }
+    }
+
+    private void assertAllSent() {
+        assertThat(started).containsExactlyInAnyOrder(domains("added", ADDED).toArray(new String[0]));
+        assertThat(ended).containsExactlyInAnyOrder(domains("removed", REMOVED).toArray(new String[0]));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> domains(String prefix, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add(prefix + i + ".example.com");
+        }
+        return domains;
+    }
+
+    private Version version() {
+        var version = new Version(blocklistId, "raw", "parsed", 0, Instant.ofEpochSecond(1_600_000_000L), false);
+        version.setId(UUID.randomUUID());
+        return version;
+    }
+}
@@ -0,0 +1,148 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Version;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpClientSettingsTest {
+    private static final int REQUESTS = 100;
+    private static final long REQUEST_MILLIS = 10;
+
+    @Test
+    void concurrencyLimitBoundsApiRequestsInFlight() throws IOException {
+        for (var version : HttpClient.Version.values()) {
+            for (var limit : List.of(1, 8)) {
+                try (var server = slowEntryServer()) {
+                    sendEntryPeriods(server, version, limit);
+
+                    assertThat(server.requests("start")).isEqualTo(REQUESTS);
+                    assertThat(server.maxInFlight()).isLessThanOrEqualTo(limit);
+                }
+            }
+        }
+    }
+
+    @Test
+    void higherConcurrencyLimitRaisesApiThroughput() throws IOException {
+        long serialNanos;
+        long concurrentNanos;
+        try (var server = slowEntryServer()) {
+            serialNanos = sendEntryPeriods(server, HttpClient.Version.HTTP_1_1, 1);
+        }
+        try (var server = slowEntryServer()) {
+            concurrentNanos = sendEntryPeriods(server, HttpClient.Version.HTTP_1_1, 16);
+            assertThat(server.maxInFlight()).isGreaterThan(1);
+        }
+
+        // 100 requests of 10 ms take at least a second one at a time, and about 70 ms sixteen at a time
+        assertThat(serialNanos).isGreaterThanOrEqualTo(Duration.ofMillis(REQUESTS * REQUEST_MILLIS).toNanos());
+        assertThat(concurrentNanos * 3).isLessThan(serialNanos);
+    }
+
+    @Test
+    void concurrencyLimitHoldsDownloadsUntilTheirBodyIsRead() throws IOException {
+        var body = "a.example.com\n".repeat(10_000);
+        try (var server = new StubServer().on("GET", "/list.txt", "upstream", request -> {
+            sleep(REQUEST_MILLIS);
+            return StubServer.Response.of(200, body);
+        }); var downloader = new ListDownloader(settings(HttpClient.Version.HTTP_1_1, 2))) {
+            var executor = Executors.newFixedThreadPool(8);
+            try {
+                var downloads = new CompletableFuture<?>[16];
+                for (var i = 0; i < downloads.length; i++) {
+                    downloads[i] = CompletableFuture.supplyAsync(() -> {
+                        try (var download = downloader.download(server.baseUrl() + "/list.txt", FetchState.EMPTY)) {
+                            return download.getSize();
+                        }
+                    }, executor);
+                }
+                CompletableFuture.allOf(downloads).join();
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertThat(server.requests("upstream")).isEqualTo(16);
+            assertThat(server.maxInFlight()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    void closingAClientStopsItsPlatformThreads() throws Exception {
+        LoaderExecutors.setPreferVirtualThreads(false);
+        try (var server = new StubServer().on("GET", "/list.txt", "upstream", request -> StubServer.Response.of(200, "a.example.com\n"))) {
+            var settings = new HttpClientSettings("closing", HttpClient.Version.HTTP_1_1, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30), 4);
+            var downloader = new ListDownloader(settings);
+            try (var download = downloader.download(server.baseUrl() + "/list.txt", FetchState.EMPTY)) {
+                assertThat(download.getSize()).isGreaterThan(0L);
+            }
+            assertThat(httpThreads("closing")).isGreaterThan(0L);
+
+            downloader.close();
+
+            for (var attempt = 0; attempt < 50 && httpThreads("closing") > 0; attempt++) {
+                sleep(100);
+            }
+            assertThat(httpThreads("closing")).isZero();
+        } finally {
+            LoaderExecutors.setPreferVirtualThreads(true);
+        }
+    }
+
+    private static long httpThreads(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().startsWith(name + "-http-"))
+                .count();
+    }
+
+    /**
+     * Starts {@link #REQUESTS} entry periods at once and returns how long they took.
+     */
+    private static long sendEntryPeriods(StubServer server, HttpClient.Version version, int limit) {
+        var settings = settings(version, limit);
+        try (var client = new BlocklistClient(new StubConfiguration(server.baseUrl()) {
+            @Override
+            public HttpClientSettings apiHttpClient() {
+                return settings;
+            }
+        })) {
+            var target = new Version(UUID.randomUUID(), "raw", "parsed", 1, Instant.now(), false);
+            target.setId(UUID.randomUUID());
+            var started = System.nanoTime();
+            var requests = new CompletableFuture<?>[REQUESTS];
+            for (var i = 0; i < REQUESTS; i++) {
+                requests[i] = client.startEntryPeriod(target, "host" + i + ".example.com");
+            }
+            CompletableFuture.allOf(requests).join();
+            return System.nanoTime() - started;
+        }
+    }
+
+    private static HttpClientSettings settings(HttpClient.Version version, int limit) {
+        return new HttpClientSettings("test", version, Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30), limit);
+    }
+
+    private static StubServer slowEntryServer() throws IOException {
+        return new StubServer().on("POST", "/blocklists/[^/]+/versions/[^/]+/entries", "start", request -> {
+            sleep(REQUEST_MILLIS);
+            return StubServer.Response.of(201);
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
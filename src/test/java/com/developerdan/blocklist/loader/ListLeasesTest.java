@@ -0,0 +1,100 @@
+package com.developerdan.blocklist.loader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ListLeasesTest {
+    private static final Duration TTL = Duration.ofMillis(1500);
+    private StubBlocklistApi api;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = new StubBlocklistApi();
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.close();
+    }
+
+    @Test
+    void listLeasedByANodeThatDiesIsLoadedOnceItsLeaseExpires(@TempDir Path leaseDirectory) throws Exception {
+        var domains = AppTest.domains("leased", 100);
+        api.upstream(domains);
+        App.initialize(new StubConfiguration(api.baseUrl()) {
+            @Override
+            public Optional<Path> leaseDirectory() {
+                return Optional.of(leaseDirectory);
+            }
+
+            @Override
+            public Duration leaseTtl() {
+                return TTL;
+            }
+        });
+        var list = api.blocklist();
+
+        var node = startLeaseHolder(leaseDirectory, api.blocklistId);
+        try {
+            // the other node dies holding the lease while this one waits for it
+            CompletableFuture.delayedExecutor(TTL.toMillis(), TimeUnit.MILLISECONDS).execute(node::destroyForcibly);
+
+            var results = App.loadShard(List.of(list), new Shard(0, 1), new ListScheduler(1, 1, RetryPolicy.none()));
+
+            assertThat(node.isAlive()).isFalse();
+            assertThat(results).hasSize(1);
+            assertThat(results.get(0).isSuccessful()).isTrue();
+            assertThat(api.requests("createVersion")).isEqualTo(1);
+            assertThat(api.started(api.versions().get(0).getId())).containsExactlyInAnyOrder(domains.toArray(new String[0]));
+        } finally {
+            node.destroyForcibly().waitFor();
+        }
+    }
+
+    private static Process startLeaseHolder(Path leaseDirectory, UUID blocklistId) throws IOException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var node = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LeaseHolder.class.getName(),
+                leaseDirectory.toString(), blocklistId.toString(), Long.toString(TTL.toMillis()))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        var output = new BufferedReader(new InputStreamReader(node.getInputStream(), StandardCharsets.UTF_8));
+        // skip whatever the node logs before it holds the lease
+        var line = output.readLine();
+        while (line != null && !line.equals("held")) {
+            line = output.readLine();
+        }
+        assertThat(line).isEqualTo("held");
+        return node;
+    }
+
+    /**
+     * Another loader node: takes the list's lease, keeps it alive with the heartbeat and never loads the list.
+     */
+    static final class LeaseHolder {
+        public static void main(String[] args) throws InterruptedException {
+            var leases = new ListLeases(Path.of(args[0]), new Shard(1, 2), Duration.ofMillis(Long.parseLong(args[2])), Duration.ofMinutes(10));
+            if (leases.tryAcquire(UUID.fromString(args[1])).isEmpty()) {
+                throw new IllegalStateException("List is already leased");
+            }
+            System.out.println("held");
+            System.out.flush();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.tools.BlocklistParser;
+import com.developerdan.blocklist.tools.Domain;
+import com.developerdan.blocklist.tools.DomainListParser;
+import com.developerdan.blocklist.tools.HostsParser;
+import com.developerdan.blocklist.tools.ParsedList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelListParserTest {
+    @TempDir
+    Path directory;
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void hostsFileParsesLikeASingleParse() throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("# hosts fixture");
+        lines.add("127.0.0.1 localhost");
+        lines.add("");
+        for (var domain : fixtureDomains(new Random(3), 5_000)) {
+            lines.add("0.0.0.0 " + domain);
+        }
+        var file = write("hosts.txt", lines, true);
+
+        assertParsesLikeASingleParse(file, HostsParser::new);
+    }
+
+    @Test
+    void domainListParsesLikeASingleParse() throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("# domain fixture");
+        lines.addAll(fixtureDomains(new Random(4), 5_000));
+        lines.add("   ");
+        lines.add("Mixed.Case.EXAMPLE.com");
+        var file = write("domains.txt", lines, false);
+
+        assertParsesLikeASingleParse(file, DomainListParser::new);
+    }
+
+    @Test
+    void fileThatFitsOneChunkParsesLikeASingleParse() throws IOException {
+        var file = write("small.txt", List.of("b.example.com", "a.example.org", "b.example.com"), true);
+
+        var parallel = new ParallelListParser(DomainListParser::new, pool).parse(file);
+
+        assertThat(parallel.getEntries()).containsExactly("b.example.com", "a.example.org");
+        assertThat(parallel.getParsedSha256()).isEqualTo(serial(file, DomainListParser::new).getParsedSha());
+    }
+
+    private void assertParsesLikeASingleParse(Path file, Supplier<BlocklistParser<Domain>> parsers) throws IOException {
+        var serial = serial(file, parsers);
+        var expected = DomainStore.copyOf(serial.getRecords(), Domain::toString);
+
+        for (var chunkBytes : List.of(64, 1024, 1 << 20)) {
+            var parallel = new ParallelListParser(parsers, pool, chunkBytes).parse(file);
+
+            assertThat(parallel.getEntries()).containsExactlyElementsOf(expected);
+            assertThat(parallel.getParsedSha256()).isEqualTo(serial.getParsedSha());
+        }
+    }
+
+    private static ParsedList<Domain> serial(Path file, Supplier<BlocklistParser<Domain>> parsers) throws IOException {
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return parsers.get().parseStream(lines);
+        }
+    }
+
+    private Path write(String name, List<String> lines, boolean finalLineEnd) throws IOException {
+        var text = String.join("\n", lines) + (finalLineEnd ? "\n" : "");
+        return Files.writeString(directory.resolve(name), text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Domains under several parents, so their parser order and {@link DomainStore} order differ, with duplicates.
+     */
+    private static List<String> fixtureDomains(Random random, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            domains.add("host" + random.nextInt(count / 2) + ".zone" + random.nextInt(7) + (random.nextBoolean() ? ".example.com" : ".example.net"));
+        }
+        return domains;
+    }
+}
@@ -0,0 +1,51 @@
+package com.developerdan.blocklist.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestWindowTest {
+    private static final Duration TARGET = Duration.ofMillis(100);
+
+    @Test
+    void aFullWindowOfFastAttemptsGrowsTheLimit() {
+        var window = new RequestWindow(8, 1, 16, TARGET);
+
+        for (var i = 0; i < 8; i++) {
+            window.recordAttempt(TimeUnit.MILLISECONDS.toNanos(5), false);
+        }
+
+        assertThat(window.getLimit()).isEqualTo(9);
+    }
+
+    @Test
+    void aSlowOrFailedAttemptHalvesTheLimitOncePerTargetInterval() {
+        var window = new RequestWindow(8, 1, 16, TARGET);
+
+        window.recordAttempt(TimeUnit.MILLISECONDS.toNanos(500), false);
+        window.recordAttempt(TimeUnit.MILLISECONDS.toNanos(5), true);
+
+        assertThat(window.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void requestsThatTakeLongerThanTheTargetAsAWholeDoNotShrinkTheLimit() {
+        var window = new RequestWindow(8, 1, 16, TARGET);
+        var tracker = window.newTracker();
+
+        // a request retried after a backoff: the tracker only sees it complete late, its attempts were fast
+        tracker.submit(() -> CompletableFuture.supplyAsync(() -> {
+            window.recordAttempt(TimeUnit.MILLISECONDS.toNanos(5), false);
+            return true;
+        }, CompletableFuture.delayedExecutor(300, TimeUnit.MILLISECONDS)));
+        tracker.awaitCompletion();
+
+        assertThat(window.getLimit()).isEqualTo(8);
+        assertThat(window.getCompleted()).isEqualTo(1);
+        assertThat(window.getInFlight()).isZero();
+    }
+}
@@ -0,0 +1,68 @@
+package com.developerdan.blocklist.loader;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    @Test
+    void retriesTransientFailures() {
+        assertThat(RetryPolicy.isRetryable(new IOException("reset"))).isTrue();
+        assertThat(RetryPolicy.isRetryable(new HttpTimeoutException("timeout"))).isTrue();
+        assertThat(RetryPolicy.isRetryable(new CompletionException(new UncheckedIOException(new IOException("reset"))))).isTrue();
+        assertThat(RetryPolicy.isRetryable(new ApiException("busy", 503))).isTrue();
+        assertThat(RetryPolicy.isRetryable(new ApiException("slow down", 429))).isTrue();
+    }
+
+    @Test
+    void doesNotRetryRejectedRequests() {
+        assertThat(RetryPolicy.isRetryable(new ApiException("bad request", 400))).isFalse();
+        assertThat(RetryPolicy.isRetryable(new ApiException("not found", 404))).isFalse();
+        assertThat(RetryPolicy.isRetryable(new IllegalStateException("bug"))).isFalse();
+    }
+
+    @Test
+    void doesNotRetryMalformedBodiesWrappedInIoExceptions() {
+        var malformed = new JsonParseException(null, "Unexpected character");
+
+        assertThat(RetryPolicy.isRetryable(malformed)).isFalse();
+        assertThat(RetryPolicy.isRetryable(new UncheckedIOException(malformed))).isFalse();
+        assertThat(RetryPolicy.isRetryable(new CompletionException(new UncheckedIOException(new IOException(malformed))))).isFalse();
+    }
+
+    @Test
+    void retriesAsynchronousCallsUntilTheySucceed() {
+        var policy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5));
+        var attempts = new AtomicInteger();
+
+        var result = policy.callAsync("test", () -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new IOException("reset"))
+                : CompletableFuture.completedFuture("done"));
+
+        assertThat(result.join()).isEqualTo("done");
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() {
+        var policy = new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(5));
+        var attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.call("test", () -> {
+            attempts.incrementAndGet();
+            throw new ApiException("busy", 503);
+        })).isInstanceOf(ApiException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+}
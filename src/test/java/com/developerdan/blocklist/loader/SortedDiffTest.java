@@ -0,0 +1,115 @@
+package com.developerdan.blocklist.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SortedDiffTest {
+
+    @Test
+    void matchesTheUnionDiffOnFixtures() {
+        for (var fixture : fixtures()) {
+            var previous = new TreeSet<>(fixture.get(0));
+            var current = new TreeSet<>(fixture.get(1));
+            var events = new Events();
+
+            SortedDiff.diff(previous, current, events);
+
+            assertThat(events.events).containsExactlyElementsOf(unionDiff(previous, current));
+        }
+    }
+
+    @Test
+    void domainStoresDiffLikeTheUnionDiffInStoreOrder() {
+        for (var fixture : fixtures()) {
+            var previous = new TreeSet<>(DomainStore.COMPARATOR);
+            previous.addAll(fixture.get(0));
+            var current = new TreeSet<>(DomainStore.COMPARATOR);
+            current.addAll(fixture.get(1));
+            var events = new Events();
+
+            DomainStore.diff(DomainStore.copyOf(fixture.get(0).iterator()), DomainStore.copyOf(fixture.get(1).iterator()), events);
+
+            assertThat(events.events).containsExactlyElementsOf(unionDiff(previous, current));
+        }
+    }
+
+    @Test
+    void rejectsInputThatIsNotStrictlyAscending() {
+        assertThatThrownBy(() -> SortedDiff.diff(List.of("a", "c", "b").iterator(), List.of("a").iterator(), Comparator.naturalOrder(), new Events()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SortedDiff.diff(List.of("a").iterator(), List.of("b", "b").iterator(), Comparator.naturalOrder(), new Events()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * The diff createEntryPeriods did before the merge: walk the union of both sets and look each entry up in both.
+     */
+    private static List<String> unionDiff(NavigableSet<String> previous, NavigableSet<String> current) {
+        var all = new TreeSet<>(previous);
+        all.addAll(current);
+        var events = new ArrayList<String>();
+        for (var entry : all) {
+            if (!previous.contains(entry)) {
+                events.add("+" + entry);
+            } else if (!current.contains(entry)) {
+                events.add("-" + entry);
+            } else {
+                events.add("=" + entry);
+            }
+        }
+        return events;
+    }
+
+    private static List<List<List<String>>> fixtures() {
+        var fixtures = new ArrayList<List<List<String>>>();
+        fixtures.add(List.of(List.of(), List.of()));
+        fixtures.add(List.of(List.of(), List.of("a.com", "b.com")));
+        fixtures.add(List.of(List.of("a.com", "b.com"), List.of()));
+        fixtures.add(List.of(List.of("a.com", "b.com"), List.of("a.com", "b.com")));
+        fixtures.add(List.of(List.of("a.com", "c.com"), List.of("b.com", "d.com")));
+        fixtures.add(List.of(List.of("example.com", "ads.example.com", "example.net"), List.of("ads.example.com", "tracker.example.com", "example.org")));
+        var random = new Random(4);
+        for (var i = 0; i < 40; i++) {
+            var pool = 1 + random.nextInt(3000);
+            fixtures.add(List.of(randomDomains(random, pool, random.nextInt(2000)), randomDomains(random, pool, random.nextInt(2000))));
+        }
+        return fixtures;
+    }
+
+    private static List<String> randomDomains(Random random, int pool, int count) {
+        var domains = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            var n = random.nextInt(pool);
+            domains.add((n % 3 == 0 ? "sub" + n % 7 + "." : "") + "host" + n / 3 + (n % 2 == 0 ? ".com" : ".net"));
+        }
+        return domains;
+    }
+
+    private static final class Events implements SortedDiff.Sink<String> {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void added(String entry) {
+            events.add("+" + entry);
+        }
+
+        @Override
+        public void removed(String entry) {
+            events.add("-" + entry);
+        }
+
+        @Override
+        public void unchanged(String entry) {
+            events.add("=" + entry);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.developerdan.blocklist.loader;
+
+import com.developerdan.blocklist.loader.entity.Blocklist;
+import com.developerdan.blocklist.loader.entity.Version;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StubServer} playing the Blocklist API for a single blocklist, plus the upstream host of its list.
+ * Versions are kept newest first; entry periods started and ended through the API are recorded per version.
+ * Entry changes are offered between any two versions added with {@link #addVersion}. The catalog holds just this
+ * blocklist, in the domain format.
+ */
+final class StubBlocklistApi implements AutoCloseable {
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new ParameterNamesModule())
+            .registerModule(new Jdk8Module())
+            .registerModule(new JavaTimeModule());
+    final UUID blocklistId = UUID.randomUUID();
+    final StubServer server;
+    private final List<Version> versions = new CopyOnWriteArrayList<>();
+    private final Map<UUID, List<String>> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<String>> started = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<String>> ended = new ConcurrentHashMap<>();
+    private final AtomicInteger catalogFailures = new AtomicInteger();
+    private volatile String upstream = "";
+
+    StubBlocklistApi() throws IOException {
+        server = new StubServer()
+                .on("GET", "/upstream/list.txt", "upstream", request -> StubServer.Response.of(200, upstream))
+                .on("GET", "/blocklists", "getLists", request -> {
+                    if (catalogFailures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0) {
+                        return StubServer.Response.of(500);
+                    }
+                    return json(200, "page=0".equals(request.query) ? List.of(blocklist()) : List.of());
+                })
+                .on("GET", "/blocklists/[^/]+/versions", "getVersions", request -> json(200, versions))
+                .on("GET", "/versions/[^/]+/entries/changes", "getEntryChanges", request -> {
+                    var since = entries.get(UUID.fromString(request.query.replaceFirst("^since=", "")));
+                    if (since == null) {
+                        return StubServer.Response.of(410);
+                    }
+                    return StubServer.Response.of(200, changes(since, entries.get(versionId(request.path, 2))));
+                })
+                .on("GET", "/versions/[^/]+/entries", "getFullList", request ->
+                        StubServer.Response.of(200, String.join("\n", entries.getOrDefault(versionId(request.path, 2), List.of()))))
+                .on("POST", "/versions", "createVersion", request -> {
+                    var version = MAPPER.readValue(request.body, Version.class);
+                    version.setId(UUID.randomUUID());
+                    versions.add(0, version);
+                    return json(201, version);
+                })
+                .on("PUT", "/versions", "updateVersion", request -> {
+                    var version = MAPPER.readValue(request.body, Version.class);
+                    versions.replaceAll(existing -> existing.getId().equals(version.getId()) ? version : existing);
+                    return json(200, version);
+                })
+                .on("DELETE", "/versions/[^/]+", "deleteVersion", request -> {
+                    var id = versionId(request.path, 2);
+                    versions.removeIf(version -> version.getId().equals(id));
+                    return StubServer.Response.of(200);
+                })
+                .on("POST", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkStart", request -> {
+                    record(started, request.path, request.bodyText().lines().toList());
+                    return StubServer.Response.of(201);
+                })
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries/bulk", "bulkEnd", request -> {
+                    record(ended, request.path, request.bodyText().lines().toList());
+                    return StubServer.Response.of(200);
+                })
+                .on("POST", "/blocklists/[^/]+/versions/[^/]+/entries", "start", request -> {
+                    record(started, request.path, List.of(request.bodyText()));
+                    return StubServer.Response.of(201);
+                })
+                .on("PUT", "/blocklists/[^/]+/versions/[^/]+/entries", "end", request -> {
+                    record(ended, request.path, List.of(request.bodyText()));
+                    return StubServer.Response.of(201);
+                });
+    }
+
+    String baseUrl() {
+        return server.baseUrl();
+    }
+
+    String upstreamUrl() {
+        return baseUrl() + "/upstream/list.txt";
+    }
+
+    void upstream(List<String> domains) {
+        upstream = String.join("\n", domains) + "\n";
+    }
+
+    /**
+     * Fails the next catalog requests.
+     */
+    void failCatalog(int requests) {
+        catalogFailures.set(requests);
+    }
+
+    Blocklist blocklist() {
+        var blocklist = new Blocklist();
+        blocklist.setId(blocklistId);
+        blocklist.setName("test");
+        blocklist.setFormat("domain");
+        blocklist.setDownloadUrl(upstreamUrl());
+        return blocklist;
+    }
+
+    /**
+     * Adds a fully loaded version with the given entries as the newest one.
+     */
+    Version addVersion(List<String> domains, String parsedSha256, Instant createdOn) {
+        var version = new Version(blocklistId, "raw", parsedSha256, domains.size(), createdOn, true);
+        version.setId(UUID.randomUUID());
+        versions.add(0, version);
+        entries.put(version.getId(), new ArrayList<>(domains));
+        return version;
+    }
+
+    List<Version> versions() {
+        return List.copyOf(versions);
+    }
+
+    Set<String> started(UUID versionId) {
+        return started.getOrDefault(versionId, Set.of());
+    }
+
+    Set<String> ended(UUID versionId) {
+        return ended.getOrDefault(versionId, Set.of());
+    }
+
+    long requests(String route) {
+        return server.requests(route);
+    }
+
+    private static String changes(List<String> from, List<String> to) {
+        var body = new StringBuilder();
+        to.stream().filter(domain -> !from.contains(domain)).forEach(domain -> body.append('+').append(domain).append('\n'));
+        from.stream().filter(domain -> !to.contains(domain)).forEach(domain -> body.append('-').append(domain).append('\n'));
+        return body.toString();
+    }
+
+    private static void record(Map<UUID, Set<String>> periods, String path, List<String> domains) {
+        periods.computeIfAbsent(versionId(path, 4), ignored -> ConcurrentHashMap.newKeySet()).addAll(domains);
+    }
+
+    /**
+     * The id in the given segment of a path, counting the empty segment before the leading slash.
+     */
+    static UUID versionId(String path, int segment) {
+        return UUID.fromString(path.split("/")[segment]);
+    }
+
+    static StubServer.Response json(int status, Object body) throws IOException {
+        return new StubServer.Response(status, MAPPER.writeValueAsBytes(body), Map.of("Content-Type", "application/json"));
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+}
@@ -0,0 +1,41 @@
+package com.developerdan.blocklist.loader;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Loader configuration pointing at a {@link StubServer}, with local caches disabled and quick retries.
+ */
+class StubConfiguration extends Configuration {
+    private final String baseUrl;
+
+    StubConfiguration(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public String blocklistApiBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public String blocklistApiAuthToken() {
+        return "test";
+    }
+
+    @Override
+    public Optional<Path> cacheDirectory() {
+        return Optional.empty();
+    }
+
+    @Override
+    public int retryAttempts() {
+        return 2;
+    }
+
+    @Override
+    public Duration retryBaseDelay() {
+        return Duration.ofMillis(10);
+    }
+}
@@ -0,0 +1,177 @@
+package com.developerdan.blocklist.loader;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * In-process HTTP server for tests. Requests are answered by the latest route whose method and path pattern
+ * match, anything else with 404. Requests are counted per route and the latest one is kept, as are the most
+ * requests in flight at once per route and in total.
+ */
+final class StubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, Request> lastRequests = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+    private final AtomicInteger maxTotalInFlight = new AtomicInteger();
+
+    StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    StubServer on(String method, String pathPattern, String name, Handler handler) {
+        routes.add(0, new Route(method, Pattern.compile(pathPattern), name, handler));
+        return this;
+    }
+
+    long requests(String name) {
+        var count = requests.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    int maxInFlight(String name) {
+        var max = maxInFlight.get(name);
+        return max == null ? 0 : max.get();
+    }
+
+    /**
+     * The latest request the named route received.
+     */
+    Optional<Request> lastRequest(String name) {
+        return Optional.ofNullable(lastRequests.get(name));
+    }
+
+    int maxInFlight() {
+        return maxTotalInFlight.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var request = new Request(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getRequestURI().getQuery(), exchange.getRequestHeaders(), exchange.getRequestBody().readAllBytes());
+            var route = routes.stream()
+                    .filter(candidate -> candidate.method.equals(request.method) && candidate.path.matcher(request.path).matches())
+                    .findFirst()
+                    .orElse(null);
+            if (route == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            requests.computeIfAbsent(route.name, ignored -> new LongAdder()).increment();
+            lastRequests.put(route.name, request);
+            var running = inFlight.computeIfAbsent(route.name, ignored -> new AtomicInteger()).incrementAndGet();
+            maxInFlight.computeIfAbsent(route.name, ignored -> new AtomicInteger()).accumulateAndGet(running, Math::max);
+            maxTotalInFlight.accumulateAndGet(totalInFlight.incrementAndGet(), Math::max);
+            Response response;
+            try {
+                response = route.handler.handle(request);
+            } finally {
+                inFlight.get(route.name).decrementAndGet();
+                totalInFlight.decrementAndGet();
+            }
+            response.headers.forEach((header, value) -> exchange.getResponseHeaders().add(header, value));
+            exchange.sendResponseHeaders(response.status, response.body.length == 0 ? -1 : response.body.length);
+            if (response.body.length > 0) {
+                exchange.getResponseBody().write(response.body);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    interface Handler {
+        Response handle(Request request) throws IOException;
+    }
+
+    static final class Request {
+        final String method;
+        final String path;
+        final String query;
+        final Headers headers;
+        final byte[] body;
+
+        private Request(String method, String path, String query, Headers headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        Optional<String> header(String name) {
+            return Optional.ofNullable(headers.getFirst(name));
+        }
+
+        String bodyText() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class Response {
+        final int status;
+        final byte[] body;
+        final Map<String, String> headers;
+
+        Response(int status, byte[] body, Map<String, String> headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        static Response of(int status) {
+            return new Response(status, new byte[0], Map.of());
+        }
+
+        static Response of(int status, String body) {
+            return new Response(status, body.getBytes(StandardCharsets.UTF_8), Map.of());
+        }
+    }
+
+    private static final class Route {
+        private final String method;
+        private final Pattern path;
+        private final String name;
+        private final Handler handler;
+
+        private Route(String method, Pattern path, String name, Handler handler) {
+            this.method = method;
+            this.path = path;
+            this.name = name;
+            this.handler = handler;
+        }
+    }
+}